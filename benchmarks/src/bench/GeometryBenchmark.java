@@ -0,0 +1,87 @@
+package bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.vecmath.Matrix4d;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import back.Coordinates;
+import back.Food;
+import back.LevelSchema;
+
+/**
+ * Measures the geometry that the game logic and the 3D view lean on: circle
+ * overlap tests, obstacle overlap tests and splitting, and the mapping from
+ * the flat level onto the torus.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeometryBenchmark {
+
+  @Param({ "10", "100", "1000" })
+  int obstacleCount;
+
+  @Param({ "400", "2000" })
+  double levelWidth;
+
+  // The schema the obstacles live in
+  private LevelSchema schema;
+
+  // Two circles close enough to overlap
+  private Food first;
+  private Food second;
+
+  // Coordinates to map onto the torus
+  private Coordinates coordinates;
+
+  @Setup
+  public void setup() {
+    schema = Schemas.create(levelWidth, obstacleCount, 3, 42);
+    first = new Food(new Coordinates(schema, levelWidth / 3, levelWidth / 8));
+    second = new Food(new Coordinates(schema, levelWidth / 3 + 4, levelWidth / 8 + 3));
+    coordinates = new Coordinates(schema, 0, 0);
+  }
+
+  @Benchmark
+  public boolean circleOverlapsWithCircle() {
+    return first.overlapsWithCircle(second);
+  }
+
+  @Benchmark
+  public boolean obstaclesOverlapWithCircle() {
+    boolean overlaps = false;
+    for (LevelSchema.Obstacle o : schema.getObstacles())
+      overlaps |= o.overlapsWithCircle(first);
+    return overlaps;
+  }
+
+  @Benchmark
+  public void obstacleSplit(Blackhole blackhole) {
+    for (LevelSchema.Obstacle o : schema.getObstacles()) {
+      List<LevelSchema.Obstacle> pieces = o.split();
+      blackhole.consume(pieces);
+    }
+  }
+
+  @Benchmark
+  public Matrix4d coordinatesTransformation() {
+    return coordinates.getCoordinatesTransformation(levelWidth / 3, levelWidth / 8, 10);
+  }
+}
@@ -0,0 +1,90 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import back.Level;
+import back.Simulation;
+
+/**
+ * Measures one tick of the game, Level.update, which is everything the game
+ * logic does per frame: turning, moving, eating and collision checks.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LevelBenchmark {
+
+  @Param({ "3", "100", "1000" })
+  int snakeLength;
+
+  @Param({ "0", "10", "100" })
+  int obstacleCount;
+
+  @Param({ "400", "2000" })
+  double levelWidth;
+
+  // The level being updated
+  private Level level;
+
+  // Ticks since the level was made, used to weave every now and then
+  private long tick;
+
+  /**
+   * Makes sure there is a level that's still going before every iteration,
+   * starting a fresh one if the last one ended. Once a game is over update()
+   * does nothing, so timing it then would be meaningless.
+   * 
+   * The level is made wide enough for the snake (see Schemas.fitWidth()), so
+   * levelWidth is only the narrowest it can be.
+   */
+  @Setup(org.openjdk.jmh.annotations.Level.Iteration)
+  public void setup() {
+    if (level != null && !level.getState().gameOver())
+      return;
+    level = new Level(
+        Schemas.create(Schemas.fitWidth(levelWidth, snakeLength), obstacleCount, snakeLength, 42));
+    tick = 0;
+    level.update(0);
+    if (level.getState().gameOver())
+      throw new IllegalStateException("The level is over as soon as it starts");
+  }
+
+  /**
+   * Ticks the level. The snake weaves gently along its starting row, turning one
+   * way and then back every ten ticks, so it keeps turning without ever going in
+   * a circle and running into its own body.
+   * 
+   * @return state
+   */
+  @Benchmark
+  public Level.State update() {
+    double angle = 0;
+    switch ((int) (tick++ % 40)) {
+    case 0:
+    case 30:
+      angle = Simulation.TURN_ANGLE;
+      break;
+    case 10:
+    case 20:
+      angle = -Simulation.TURN_ANGLE;
+      break;
+    }
+    level.update(angle);
+    return level.getState();
+  }
+}
@@ -0,0 +1,73 @@
+package bench;
+
+import java.util.Random;
+
+import back.LevelSchema;
+import back.Snake;
+
+/**
+ * Builds the level schemas that the benchmarks run against, so that every
+ * benchmark varies level size, obstacle count and snake length the same way.
+ */
+final class Schemas {
+
+  // Smallest and largest side of a generated obstacle
+  private final static double MIN_OBSTACLE_SIZE = 5;
+  private final static double MAX_OBSTACLE_SIZE = 40;
+
+  // How far above and below the snake's starting row obstacles are kept, so
+  // that a snake going along that row never runs into one
+  private final static double CLEAR_BAND = 30;
+
+  private Schemas() {
+  }
+
+  /**
+   * Builds a schema that is twice as wide as it is tall, with randomly placed
+   * obstacles. Obstacles are allowed to hang over the edges of the level so that
+   * the wrap around code gets exercised too, but stay out of a band along the
+   * snake's starting row. The same seed always gives the same schema.
+   * 
+   * @param width
+   * @param obstacleCount
+   * @param snakeLength
+   * @param seed
+   * @return schema
+   */
+  static LevelSchema create(double width, int obstacleCount, int snakeLength, long seed) {
+    double height = width / 2;
+    LevelSchema schema = new LevelSchema("benchmark", width, height, width / 4, height / 2, 0, 2, snakeLength,
+        Integer.MAX_VALUE);
+    Random random = new Random(seed);
+    for (int i = 0; i < obstacleCount; i++) {
+      double obstacleHeight = size(random);
+      double y = schema
+          .wrapY(height / 2 + CLEAR_BAND + random.nextDouble() * (height - 2 * CLEAR_BAND - obstacleHeight));
+      schema.addObstacle(random.nextDouble() * width, y, size(random), obstacleHeight);
+    }
+    return schema;
+  }
+
+  /**
+   * Works out how wide a level has to be for a snake to go along its starting
+   * row without ever reaching its own tail. The snake starts out stretched
+   * straight back from its head, so anything narrower than the snake has it
+   * wrapped around onto itself before the first tick. Twice the snake's length
+   * leaves room for it to grow.
+   * 
+   * @param width       -- the width wanted
+   * @param snakeLength -- the number of segments the snake starts with
+   * @return width, or more if the snake needs it
+   */
+  static double fitWidth(double width, int snakeLength) {
+    return Math.max(width, 2 * snakeLength * Snake.SEGMENT_SPACING);
+  }
+
+  /**
+   * @param random
+   * @return a random obstacle side length
+   */
+  private static double size(Random random) {
+    return MIN_OBSTACLE_SIZE + random.nextDouble() * (MAX_OBSTACLE_SIZE - MIN_OBSTACLE_SIZE);
+  }
+}
@@ -0,0 +1,62 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import back.Level;
+import back.Simulation;
+import back.Snake;
+
+/**
+ * Measures moving the snake on its own, both going straight and while the head
+ * is turning.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SnakeBenchmark {
+
+  @Param({ "3", "100", "1000", "5000" })
+  int snakeLength;
+
+  @Param({ "400", "2000" })
+  double levelWidth;
+
+  @Param({ "FOLLOW", "ARC_LENGTH" })
+  Snake.Movement movement;
+
+  // The snake being moved
+  private Snake snake;
+
+  @Setup(org.openjdk.jmh.annotations.Level.Iteration)
+  public void setup() {
+    snake = new Level(Schemas.create(levelWidth, 0, snakeLength, 42), 42, movement).getSnake();
+  }
+
+  @Benchmark
+  public Snake moveStraight() {
+    snake.move();
+    return snake;
+  }
+
+  @Benchmark
+  public Snake moveTurning() {
+    snake.getHead().rotate(Simulation.TURN_ANGLE);
+    snake.move();
+    return snake;
+  }
+}
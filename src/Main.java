@@ -1,10 +1,22 @@
 
+import java.io.FileInputStream;
+import java.io.IOException;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 
+import back.Arena;
+import back.Autopilot;
+import back.BatchRunner;
+import back.Level;
 import back.LevelSchema;
 import back.LevelSchemaLoader;
+import back.RandomTurns;
+import back.Replay;
+import back.Simulation;
+import back.TurnInput;
 import front.TitleScreen;
+import front.TorusShaderCheck;
 import front.Window;
 
 /**
@@ -15,17 +27,135 @@ import front.Window;
 public class Main {
 
   /**
-   * Runs the game.
+   * Runs the game. Without opening a window, the arguments --replay FILE play
+   * back a recorded game, --batch GAMES MAX_TICKS [random|autopilot] plays
+   * every level GAMES times with random input or the autopilot, and --arena
+   * SNAKES MAX_TICKS puts SNAKES autopilots on each level at once.
+   * --check-torus-shader compares the torus shader with the CPU on every level
+   * in an offscreen context, and exits with 1 if they don't match.
    * 
    * @throws SQLException
+   * @throws IOException
+   * @throws InterruptedException
    */
-  public static void main(String[] args) throws SQLException {
-    System.setProperty("sun.java2d.uiScale", "1.0");
-    Window window = new Window();
+  public static void main(String[] args) throws SQLException, IOException, InterruptedException {
     LevelSchemaLoader loader = new LevelSchemaLoader();
     List<LevelSchema> levelSchemas = loader.loadLevelSchemas();
+
+    if (args.length == 2 && args[0].equals("--replay")) {
+      replay(args[1], levelSchemas);
+      return;
+    }
+    if ((args.length == 3 || args.length == 4) && args[0].equals("--batch")) {
+      boolean autopilot = args.length == 4 && args[3].equals("autopilot");
+      batch(Integer.parseInt(args[1]), Long.parseLong(args[2]), autopilot, levelSchemas);
+      return;
+    }
+    if (args.length == 3 && args[0].equals("--arena")) {
+      arena(Integer.parseInt(args[1]), Long.parseLong(args[2]), levelSchemas);
+      return;
+    }
+    if (args.length == 1 && args[0].equals("--check-torus-shader"))
+      System.exit(TorusShaderCheck.run(levelSchemas) ? 0 : 1);
+
+    System.setProperty("sun.java2d.uiScale", "1.0");
+    Window window = new Window();
     new TitleScreen(window, levelSchemas);
     window.setVisible(true);
   }
 
+  /**
+   * Plays back a recorded game as fast as possible and prints how it went.
+   * 
+   * @param file
+   * @param levelSchemas
+   * @throws IOException
+   */
+  private static void replay(String file, List<LevelSchema> levelSchemas) throws IOException {
+    try (Replay replay = new Replay(new FileInputStream(file))) {
+      LevelSchema schema = null;
+      for (LevelSchema s : levelSchemas)
+        if (s.getId() == replay.getSchemaId())
+          schema = s;
+      if (schema == null)
+        throw new IOException("No level with id " + replay.getSchemaId());
+
+      Level level = new Level(schema, replay.getSeed());
+      Simulation simulation = new Simulation(level, replay);
+      simulation.runAsFastAsPossible(Long.MAX_VALUE);
+      System.out.println(schema.getName() + ": " + level.getState() + " after " + simulation.getTicks()
+          + " ticks, " + level.getFoodLeft() + " food left (" + (long) simulation.getTicksPerSecond()
+          + " ticks/s)");
+    }
+  }
+
+  /**
+   * Plays each level a number of times on every core and prints how it went.
+   * 
+   * @param games    -- games per level
+   * @param maxTicks  -- the longest a game may go on for
+   * @param autopilot -- whether the autopilot plays instead of random input
+   * @param levelSchemas
+   * @throws InterruptedException
+   */
+  private static void batch(int games, long maxTicks, boolean autopilot, List<LevelSchema> levelSchemas)
+      throws InterruptedException {
+    BatchRunner runner = new BatchRunner();
+    try {
+      for (LevelSchema schema : levelSchemas) {
+        List<BatchRunner.Game> batch = new ArrayList<BatchRunner.Game>();
+        for (int seed = 0; seed < games; seed++) {
+          long inputSeed = seed;
+          batch.add(new BatchRunner.Game(schema, seed,
+              () -> autopilot ? new Autopilot() : (TurnInput) new RandomTurns(inputSeed)));
+        }
+        System.out.println(schema.getName() + ": " + runner.run(batch, maxTicks));
+      }
+    } finally {
+      runner.shutdown();
+    }
+  }
+
+  /**
+   * Puts a number of autopilots on each level at once, lets them play until
+   * one is left, and prints how it went.
+   * 
+   * @param snakes
+   * @param maxTicks -- the longest a game may go on for
+   * @param levelSchemas
+   */
+  private static void arena(int snakes, long maxTicks, List<LevelSchema> levelSchemas) {
+    for (LevelSchema schema : levelSchemas) {
+      Arena arena;
+      try {
+        arena = new Arena(schema, snakes, 0);
+      } catch (IllegalArgumentException e) {
+        System.out.println(schema.getName() + ": " + e.getMessage());
+        continue;
+      }
+
+      Autopilot[] autopilots = new Autopilot[snakes];
+      for (int s = 0; s < snakes; s++)
+        autopilots[s] = new Autopilot();
+      double[] angles = new double[snakes];
+      long updateNanos = 0;
+      while (!arena.isOver() && arena.getTicks() < maxTicks) {
+        for (int s = 0; s < snakes; s++)
+          angles[s] = arena.isAlive(s) ? autopilots[s].nextAngle(arena, s) : 0;
+        long start = System.nanoTime();
+        arena.update(angles);
+        updateNanos += System.nanoTime() - start;
+      }
+
+      int eaten = 0;
+      int longest = 0;
+      for (int s = 0; s < snakes; s++) {
+        eaten += arena.getFoodEaten(s);
+        longest = Math.max(longest, arena.getSnake(s).getLength());
+      }
+      System.out.println(schema.getName() + ": " + arena.getAliveCount() + " of " + snakes + " snakes left after "
+          + arena.getTicks() + " ticks, " + eaten + " food eaten, longest " + longest + " segments, "
+          + (updateNanos / 1000 / Math.max(1, arena.getTicks())) + " us per update");
+    }
+  }
 }
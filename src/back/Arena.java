@@ -0,0 +1,432 @@
+package back;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * This class represents a level with many snakes on it at once, each steered
+ * by its own input (a player or an Autopilot). There is always one piece of
+ * food per snake, and the game goes on until at most one snake is left.
+ * 
+ * All of the snakes move first, and then every collision is worked out against
+ * the same positions using one grid that holds the segments of every snake, so
+ * it doesn't matter what order the snakes are in. The snakes are built without
+ * grids of their own, so only that shared grid gets rebuilt after each move.
+ * If two heads run into each other, both snakes die, and if two heads reach the
+ * same food, both of them eat it.
+ */
+public class Arena {
+
+  // The furthest the snakes move between collision checks, as in Level
+  private final static double MAX_STEP = Snake.SEGMENT_RADIUS;
+
+  // The number of random spots to try when placing a snake or food
+  private final static int MAX_RANDOM_PLACEMENTS = 1000;
+
+  // Level description
+  private LevelSchema schema;
+
+  // The seed that random was started from
+  private long seed;
+
+  // Random number generator for placing snakes and food
+  private Random random;
+
+  // The snakes, whether each one is still alive, and how much each has eaten
+  private Snake[] snakes;
+  private boolean[] alive;
+  private int[] foodEaten;
+  private int aliveCount;
+
+  // The food, one per snake (null if there was nowhere to put it)
+  private Food[] foods;
+
+  // The number of updates so far
+  private long ticks = 0;
+
+  // Every segment of every live snake, rebuilt after each move
+  private SegmentGrid grid;
+
+  // The number of ids in the grid, and the snake and segment index of each
+  private int gridSize = 0;
+  private int[] owners = new int[0];
+  private int[] indices = new int[0];
+
+  // What happened to each snake during the current step
+  private boolean[] dying;
+  private int[] growth;
+
+  // The snake whose head is being checked by headChecker
+  private int checking;
+
+  // Looks for segments (of any snake but the head being checked) that overlap
+  // with the head being checked
+  private SegmentGrid.Visitor headChecker = id -> hits(checking, id);
+
+  // The circle being checked by circleChecker
+  private double circleX;
+  private double circleY;
+  private double circleRadius;
+
+  // Looks for segments that overlap with the circle above
+  private SegmentGrid.Visitor circleChecker = id -> overlaps(id, circleX, circleY, circleRadius);
+
+  /**
+   * Constructor
+   * 
+   * @param schema
+   * @param snakeCount
+   * @param seed
+   */
+  public Arena(LevelSchema schema, int snakeCount, long seed) {
+    this(schema, snakeCount, seed, Snake.Movement.FOLLOW);
+  }
+
+  /**
+   * Constructor. The snakes start in random places facing random ways. Two
+   * arenas made from the same schema and seed, and updated with the same
+   * angles, play out exactly the same.
+   * 
+   * @param schema
+   * @param snakeCount
+   * @param seed
+   * @param movement   -- how the snakes' bodies follow their heads
+   * @throws IllegalArgumentException if there isn't room for the snakes
+   */
+  public Arena(LevelSchema schema, int snakeCount, long seed, Snake.Movement movement) {
+    this.schema = schema;
+    this.seed = seed;
+    this.random = new Random(seed);
+    this.snakes = new Snake[snakeCount];
+    this.alive = new boolean[snakeCount];
+    this.foodEaten = new int[snakeCount];
+    this.dying = new boolean[snakeCount];
+    this.growth = new int[snakeCount];
+    this.foods = new Food[snakeCount];
+    this.grid = new SegmentGrid(schema, Snake.SEGMENT_RADIUS * 2, snakeCount * schema.getSnakeStartingLength());
+
+    for (int i = 0; i < snakeCount; i++) {
+      snakes[i] = placeSnake(movement);
+      alive[i] = true;
+      addToGrid(i);
+    }
+    aliveCount = snakeCount;
+    for (int f = 0; f < foods.length; f++)
+      placeFood(f);
+  }
+
+  /**
+   * Getter for schema
+   * 
+   * @return schema
+   */
+  public LevelSchema getSchema() {
+    return schema;
+  }
+
+  /**
+   * Getter for seed
+   * 
+   * @return the seed that this arena's random numbers come from
+   */
+  public long getSeed() {
+    return seed;
+  }
+
+  /**
+   * Getter for ticks
+   * 
+   * @return the number of updates so far
+   */
+  public long getTicks() {
+    return ticks;
+  }
+
+  /**
+   * @return the number of snakes, alive or not
+   */
+  public int getSnakeCount() {
+    return snakes.length;
+  }
+
+  /**
+   * @param snake
+   * @return one of the snakes
+   */
+  public Snake getSnake(int snake) {
+    return snakes[snake];
+  }
+
+  /**
+   * @param snake
+   * @return whether a snake is still alive
+   */
+  public boolean isAlive(int snake) {
+    return alive[snake];
+  }
+
+  /**
+   * Getter for aliveCount
+   * 
+   * @return the number of snakes still alive
+   */
+  public int getAliveCount() {
+    return aliveCount;
+  }
+
+  /**
+   * @param snake
+   * @return how many pieces of food a snake has eaten
+   */
+  public int getFoodEaten(int snake) {
+    return foodEaten[snake];
+  }
+
+  /**
+   * @return the number of pieces of food
+   */
+  public int getFoodCount() {
+    return foods.length;
+  }
+
+  /**
+   * @param food
+   * @return a piece of food, or null if there was nowhere to put it
+   */
+  public Food getFood(int food) {
+    return foods[food];
+  }
+
+  /**
+   * @return whether the game is over (at most one snake left, or none if there
+   *         was only one to begin with)
+   */
+  public boolean isOver() {
+    return aliveCount <= (snakes.length > 1 ? 1 : 0);
+  }
+
+  /**
+   * Updates this arena for one frame of the game. Fast snakes are moved in
+   * several steps, with collisions checked after each one.
+   * 
+   * @param angles -- the amount that the head of each snake has rotated (dead
+   *               snakes are ignored)
+   */
+  public void update(double[] angles) {
+    for (int s = 0; s < snakes.length; s++)
+      if (alive[s] && angles[s] != 0)
+        snakes[s].getHead().rotate(angles[s]);
+
+    int steps = Math.max(1, (int) Math.ceil(schema.getSnakeStartingSpeed() / MAX_STEP));
+    for (int i = 0; i < steps && !isOver(); i++)
+      step(schema.getSnakeStartingSpeed() / steps);
+    ticks++;
+  }
+
+  /**
+   * Moves every snake part of the way for this frame, then works out what all
+   * of the heads ran into before changing anything
+   * 
+   * @param distance
+   */
+  private void step(double distance) {
+    for (int s = 0; s < snakes.length; s++)
+      if (alive[s])
+        snakes[s].move(distance);
+    rebuildGrid();
+
+    for (int s = 0; s < snakes.length; s++) {
+      if (!alive[s])
+        continue;
+      checking = s;
+      dying[s] = snakes[s].headHitObstacle()
+          || grid.visitNear(snakes[s].getX(0), snakes[s].getY(0), headChecker);
+    }
+
+    for (int f = 0; f < foods.length; f++) {
+      if (foods[f] == null)
+        continue;
+      boolean eaten = false;
+      for (int s = 0; s < snakes.length; s++) {
+        if (alive[s] && snakes[s].headReached(foods[f])) {
+          growth[s]++;
+          eaten = true;
+        }
+      }
+      if (eaten)
+        foods[f] = null;
+    }
+
+    for (int s = 0; s < snakes.length; s++) {
+      if (!alive[s])
+        continue;
+      if (dying[s]) {
+        alive[s] = false;
+        aliveCount--;
+      } else {
+        for (; growth[s] > 0; growth[s]--) {
+          snakes[s].grow();
+          foodEaten[s]++;
+        }
+      }
+      growth[s] = 0;
+    }
+
+    // Food goes where it isn't under a live snake, so the grid has to catch up
+    // with the snakes that grew or died first
+    boolean placing = false;
+    for (int f = 0; f < foods.length; f++)
+      placing |= foods[f] == null;
+    if (placing) {
+      rebuildGrid();
+      for (int f = 0; f < foods.length; f++)
+        if (foods[f] == null)
+          placeFood(f);
+    }
+  }
+
+  /**
+   * Determines whether a segment in the grid overlaps with a snake's head, the
+   * same way that Circle.overlapsWithCircle does
+   * 
+   * @param snake
+   * @param id    -- id of the segment in the grid
+   * @return whether they overlap
+   */
+  private boolean hits(int snake, int id) {
+    if (owners[id] == snake && indices[id] == 0)
+      return false;
+    Snake other = snakes[owners[id]];
+    double dx = snakes[snake].getX(0) - other.getX(indices[id]);
+    double dy = snakes[snake].getY(0) - other.getY(indices[id]);
+    return dx * dx + dy * dy < Snake.SEGMENT_RADIUS * 2 * Snake.SEGMENT_RADIUS * 2;
+  }
+
+  /**
+   * Determines whether a segment in the grid overlaps with a circle, the same
+   * way that Circle.overlapsWithCircle does
+   * 
+   * @param id     -- id of the segment in the grid
+   * @param x
+   * @param y
+   * @param radius
+   * @return whether they overlap
+   */
+  private boolean overlaps(int id, double x, double y, double radius) {
+    Snake snake = snakes[owners[id]];
+    double dx = x - snake.getX(indices[id]);
+    double dy = y - snake.getY(indices[id]);
+    return dx * dx + dy * dy < (radius + Snake.SEGMENT_RADIUS) * (radius + Snake.SEGMENT_RADIUS);
+  }
+
+  /**
+   * Determines whether any segment in the grid overlaps with a circle that is
+   * no bigger than a segment
+   * 
+   * @param x
+   * @param y
+   * @param radius -- at most SEGMENT_RADIUS
+   * @return whether a segment overlaps with the circle
+   */
+  private boolean gridOverlaps(double x, double y, double radius) {
+    circleX = x;
+    circleY = y;
+    circleRadius = radius;
+    return grid.visitNear(x, y, circleChecker);
+  }
+
+  /**
+   * Puts every segment of every live snake into the grid
+   */
+  private void rebuildGrid() {
+    grid.clear();
+    gridSize = 0;
+    for (int s = 0; s < snakes.length; s++)
+      if (alive[s])
+        addToGrid(s);
+  }
+
+  /**
+   * Puts every segment of a snake into the grid, after the ones already there
+   * 
+   * @param s
+   */
+  private void addToGrid(int s) {
+    Snake snake = snakes[s];
+    int needed = gridSize + snake.getLength();
+    if (needed > owners.length) {
+      owners = Arrays.copyOf(owners, Math.max(needed, owners.length * 2));
+      indices = Arrays.copyOf(indices, owners.length);
+      grid.ensureCapacity(owners.length);
+    }
+    for (int i = 0; i < snake.getLength(); i++, gridSize++) {
+      owners[gridSize] = s;
+      indices[gridSize] = i;
+      grid.insert(gridSize, snake.getX(i), snake.getY(i));
+    }
+  }
+
+  /**
+   * Finds a random spot for a new snake where none of it is on an obstacle or
+   * another snake
+   * 
+   * @param movement
+   * @return the snake
+   * @throws IllegalArgumentException if there's no room for it
+   */
+  private Snake placeSnake(Snake.Movement movement) {
+    FreeSpace space = schema.getFoodSpace();
+    double[] position = new double[2];
+    for (int i = 0; i < MAX_RANDOM_PLACEMENTS && space.sample(random, position); i++) {
+      Snake snake = new Snake(schema, position[0], position[1], random.nextDouble() * Math.PI * 2,
+          schema.getSnakeStartingSpeed(), schema.getSnakeStartingLength(), movement, false);
+      if (isClear(snake))
+        return snake;
+    }
+    throw new IllegalArgumentException("There isn't room for " + snakes.length + " snakes on " + schema.getName());
+  }
+
+  /**
+   * Determines whether a new snake is clear of the obstacles and the snakes
+   * placed before it (which are all in the grid)
+   * 
+   * @param snake
+   * @return whether it is clear
+   */
+  private boolean isClear(Snake snake) {
+    for (int i = 0; i < snake.getLength(); i++) {
+      if (schema.getObstacleIndex().overlapsWithCircle(snake.getX(i), snake.getY(i), Snake.SEGMENT_RADIUS))
+        return false;
+      if (gridOverlaps(snake.getX(i), snake.getY(i), Snake.SEGMENT_RADIUS))
+        return false;
+    }
+    return true;
+  }
+
+  /**
+   * Randomly places a piece of food somewhere that isn't on an obstacle or
+   * under a live snake. If there's nowhere to put it, it is left out.
+   * 
+   * @param food
+   */
+  private void placeFood(int food) {
+    FreeSpace space = schema.getFoodSpace();
+    double[] position = new double[2];
+    for (int i = 0; i < MAX_RANDOM_PLACEMENTS && space.sample(random, position); i++) {
+      if (!underSnake(position[0], position[1])) {
+        foods[food] = new Food(new Coordinates(schema, position[0], position[1]));
+        return;
+      }
+    }
+    foods[food] = null;
+  }
+
+  /**
+   * @param x
+   * @param y
+   * @return whether food at a spot would be under a live snake
+   */
+  private boolean underSnake(double x, double y) {
+    return gridOverlaps(x, y, Food.RADIUS);
+  }
+}
@@ -0,0 +1,444 @@
+package back;
+
+import java.util.Arrays;
+
+/**
+ * This class is a computer player. Each tick it works out how to turn the head
+ * of the snake so that it heads for the food along a path that avoids the
+ * obstacles and the snake's own body.
+ * 
+ * Paths are planned with A* on a coarse grid that wraps around both edges of
+ * the level, just like the level does. The obstacle part of that grid is shared
+ * by every autopilot on the same schema. A planned path is followed for as long
+ * as it stays good, and only planned again when the food moves, the body gets
+ * in the way, the head strays from the path or it gets old, and the search
+ * arrays are allocated once and reused, so most ticks cost a lookup and a
+ * little trigonometry.
+ * 
+ * An autopilot can also steer one of the snakes in an Arena, treating the other
+ * snakes as more bodies to keep away from.
+ */
+public class Autopilot implements TurnInput {
+
+  // Size of each navigation grid cell
+  final static double CELL_SIZE = Snake.SEGMENT_RADIUS;
+
+  // How far the center of a cell has to be from obstacles to be usable
+  final static double CLEARANCE = Snake.SEGMENT_RADIUS + 2;
+
+  // Ticks to follow a path before planning again anyway
+  private final static int REPLAN_INTERVAL = 25;
+
+  // How many cells ahead along the path to steer toward
+  private final static int LOOKAHEAD = 2;
+
+  // How many cells ahead along the path to look for the head, or for the body
+  // getting in the way
+  private final static int PATH_WINDOW = 6;
+
+  // The segments right behind the head, which it can't run into
+  private final static int SAFE_SEGMENTS = 3;
+
+  // How many cells ahead to look before committing to a turn
+  private final static int PROBE_CELLS = 3;
+
+  // Value for "no cell"
+  private final static int NONE = -1;
+
+  // Moves to each of the 8 neighbouring cells
+  private final static int[] NEIGHBOUR_COLUMNS = { 1, -1, 0, 0, 1, 1, -1, -1 };
+  private final static int[] NEIGHBOUR_ROWS = { 0, 0, 1, -1, 1, -1, 1, -1 };
+
+  // The schema and grid being planned on
+  private LevelSchema schema;
+  private NavigationGrid grid;
+
+  // Search state, indexed by cell. A cell's cost and parent only mean something
+  // if seen[cell] is the current search number, and it is only closed if
+  // closed[cell] is. That way nothing needs clearing between searches.
+  private double[] costs;
+  private int[] parents;
+  private int[] seen;
+  private int[] closed;
+  private int search = 0;
+
+  // Cells covered by the body, marked the same way
+  private int[] body;
+  private int bodyMark = 0;
+
+  // The open set, a binary heap of cells ordered by estimated total cost. Cells
+  // can appear more than once; stale copies are skipped when popped.
+  private int[] heapCells = new int[64];
+  private double[] heapCosts = new double[64];
+  private int heapSize = 0;
+
+  // The current path, from where the head was to the food
+  private int[] path = new int[64];
+  private int pathLength = 0;
+
+  // How far along the path the head is
+  private int pathPosition = 0;
+
+  // The cell the current path leads to, and when it was planned
+  private int plannedGoal = NONE;
+  private int ticksSincePlan = 0;
+
+  @Override
+  public double nextAngle(Level level) {
+    Snake snake = level.getSnake();
+    prepare(level.getSchema());
+    bodyMark++;
+    markBody(snake, SAFE_SEGMENTS);
+    return steer(snake, level.getFood());
+  }
+
+  /**
+   * Works out how to turn one of the snakes in an arena. The other snakes are
+   * avoided like the snake's own body, and it heads for the nearest food.
+   * 
+   * @param arena
+   * @param index -- which snake to steer
+   * @return the angle to turn the snake's head by
+   */
+  public double nextAngle(Arena arena, int index) {
+    Snake snake = arena.getSnake(index);
+    prepare(arena.getSchema());
+    bodyMark++;
+    for (int s = 0; s < arena.getSnakeCount(); s++)
+      if (arena.isAlive(s))
+        markBody(arena.getSnake(s), s == index ? SAFE_SEGMENTS : 0);
+
+    int head = grid.cellOf(snake.getX(0), snake.getY(0));
+    Food nearest = null;
+    double nearestDistance = Double.MAX_VALUE;
+    for (int f = 0; f < arena.getFoodCount(); f++) {
+      Food food = arena.getFood(f);
+      if (food == null)
+        continue;
+      double distance = grid.distance(head, grid.cellOf(food.getCoordinates().getX(), food.getCoordinates().getY()));
+      if (distance < nearestDistance) {
+        nearest = food;
+        nearestDistance = distance;
+      }
+    }
+    return steer(snake, nearest);
+  }
+
+  /**
+   * Works out how to turn a snake toward food once the bodies are marked
+   * 
+   * @param snake
+   * @param food  -- the food to head for, or null to just keep out of trouble
+   * @return the angle to turn the snake's head by
+   */
+  private double steer(Snake snake, Food food) {
+    double x = snake.getX(0);
+    double y = snake.getY(0);
+    double angle = snake.getHead().getAngle();
+    int head = grid.cellOf(x, y);
+
+    if (food == null) {
+      plannedGoal = NONE;
+      return safestTurn(x, y, angle, 0, snake.getSpeed());
+    }
+
+    // Food can be closer to an obstacle than the head could safely be, so the
+    // food's own cell may be blocked. The goal cell is never treated as blocked,
+    // and the last stretch heads straight for the food itself.
+    double foodX = food.getCoordinates().getX();
+    double foodY = food.getCoordinates().getY();
+    int goal = grid.cellOf(foodX, foodY);
+    ticksSincePlan++;
+    if (goal != plannedGoal || ticksSincePlan >= REPLAN_INTERVAL || !followPath(head))
+      plan(head, goal);
+    if (pathLength == 0)
+      return safestTurn(x, y, angle, 0, snake.getSpeed());
+
+    // Steer toward a cell a little way along the path, or the food once that
+    // is the food's cell
+    int target = path[Math.min(pathPosition + LOOKAHEAD, pathLength - 1)];
+    double targetX = target == goal ? foodX : grid.centerX(target);
+    double targetY = target == goal ? foodY : grid.centerY(target);
+    double dx = shortest(targetX - x, schema.getWidth());
+    double dy = shortest(targetY - y, schema.getHeight());
+    double difference = normalize(Math.atan2(-dy, dx) - angle);
+    double turn = 0;
+    if (difference > Simulation.TURN_ANGLE / 2)
+      turn = Simulation.TURN_ANGLE;
+    else if (difference < -Simulation.TURN_ANGLE / 2)
+      turn = -Simulation.TURN_ANGLE;
+    return safestTurn(x, y, angle, turn, snake.getSpeed());
+  }
+
+  /**
+   * Gets the grid and search arrays ready for a schema
+   * 
+   * @param levelSchema
+   */
+  private void prepare(LevelSchema levelSchema) {
+    if (levelSchema == schema)
+      return;
+    schema = levelSchema;
+    grid = levelSchema.getNavigationGrid();
+    costs = new double[grid.getCellCount()];
+    parents = new int[grid.getCellCount()];
+    seen = new int[grid.getCellCount()];
+    closed = new int[grid.getCellCount()];
+    body = new int[grid.getCellCount()];
+    search = 0;
+    bodyMark = 0;
+    pathLength = 0;
+    plannedGoal = NONE;
+  }
+
+  /**
+   * Marks the cells that a snake is in, along with the cells around each of
+   * them
+   * 
+   * @param snake
+   * @param first -- the first segment to mark (to leave out the segments right
+   *              behind the autopilot's own head)
+   */
+  private void markBody(Snake snake, int first) {
+    for (int i = first; i < snake.getLength(); i++) {
+      int cell = grid.cellOf(snake.getX(i), snake.getY(i));
+      for (int dc = -1; dc <= 1; dc++)
+        for (int dr = -1; dr <= 1; dr++)
+          body[grid.neighbour(cell, dc, dr)] = bodyMark;
+    }
+  }
+
+  /**
+   * @param cell
+   * @return whether the head can't go into a cell
+   */
+  private boolean isBlocked(int cell) {
+    return grid.isBlocked(cell) || body[cell] == bodyMark;
+  }
+
+  /**
+   * Moves along the current path to where the head is, and checks that the path
+   * ahead is still clear
+   * 
+   * @param head -- the cell the head is in
+   * @return whether the current path is still worth following
+   */
+  private boolean followPath(int head) {
+    if (pathLength == 0)
+      return ticksSincePlan < REPLAN_INTERVAL;
+    int end = Math.min(pathPosition + PATH_WINDOW, pathLength);
+    int found = NONE;
+    for (int i = pathPosition; i < end && found == NONE; i++)
+      if (path[i] == head)
+        found = i;
+    if (found == NONE)
+      return false;
+    pathPosition = found;
+    for (int i = pathPosition + 1; i < end; i++)
+      if (path[i] != plannedGoal && isBlocked(path[i]))
+        return false;
+    return true;
+  }
+
+  /**
+   * Plans a path with A*. If there is no path, the current path is left empty.
+   * 
+   * @param start
+   * @param goal
+   */
+  private void plan(int start, int goal) {
+    search++;
+    heapSize = 0;
+    pathLength = 0;
+    pathPosition = 0;
+    plannedGoal = goal;
+    ticksSincePlan = 0;
+
+    costs[start] = 0;
+    parents[start] = NONE;
+    seen[start] = search;
+    push(start, grid.distance(start, goal));
+
+    double straight = schema.getWidth() / grid.getColumns();
+    double down = schema.getHeight() / grid.getRows();
+    double diagonal = Math.sqrt(straight * straight + down * down);
+
+    while (heapSize > 0) {
+      int cell = pop();
+      if (closed[cell] == search)
+        continue;
+      closed[cell] = search;
+      if (cell == goal) {
+        buildPath(goal);
+        return;
+      }
+
+      for (int n = 0; n < NEIGHBOUR_COLUMNS.length; n++) {
+        int dc = NEIGHBOUR_COLUMNS[n];
+        int dr = NEIGHBOUR_ROWS[n];
+        int next = grid.neighbour(cell, dc, dr);
+        if (closed[next] == search || (next != goal && isBlocked(next)))
+          continue;
+
+        // Don't cut corners past something in the way
+        if (next != goal && dc != 0 && dr != 0
+            && (isBlocked(grid.neighbour(cell, dc, 0)) || isBlocked(grid.neighbour(cell, 0, dr))))
+          continue;
+
+        double cost = costs[cell] + (dc == 0 ? down : dr == 0 ? straight : diagonal);
+        if (seen[next] != search || cost < costs[next]) {
+          seen[next] = search;
+          costs[next] = cost;
+          parents[next] = cell;
+          push(next, cost + grid.distance(next, goal));
+        }
+      }
+    }
+  }
+
+  /**
+   * Fills in the path by following parents back from the goal
+   * 
+   * @param goal
+   */
+  private void buildPath(int goal) {
+    pathLength = 0;
+    for (int cell = goal; cell != NONE; cell = parents[cell]) {
+      if (pathLength == path.length)
+        path = Arrays.copyOf(path, path.length * 2);
+      path[pathLength++] = cell;
+    }
+    for (int i = 0, j = pathLength - 1; i < j; i++, j--) {
+      int swap = path[i];
+      path[i] = path[j];
+      path[j] = swap;
+    }
+  }
+
+  /**
+   * Picks a turn that doesn't run into anything in the next few cells. The
+   * preferred turn wins if it is clear; otherwise whichever turn stays clear the
+   * longest.
+   * 
+   * @param x
+   * @param y
+   * @param angle     -- current heading of the head
+   * @param preferred -- the turn that would be made if nothing were in the way
+   * @param speed
+   * @return the turn to make
+   */
+  private double safestTurn(double x, double y, double angle, double preferred, double speed) {
+    int ticks = Math.max(1, (int) Math.ceil(PROBE_CELLS * CELL_SIZE / speed));
+    int best = clearTicks(x, y, angle, preferred, speed, ticks);
+    if (best > ticks)
+      return preferred;
+    double bestTurn = preferred;
+    for (double turn : new double[] { 0, Simulation.TURN_ANGLE, -Simulation.TURN_ANGLE }) {
+      int clear = clearTicks(x, y, angle, turn, speed, ticks);
+      if (clear > best) {
+        best = clear;
+        bestTurn = turn;
+      }
+    }
+    return bestTurn;
+  }
+
+  /**
+   * Follows the head forward while it keeps turning the same way, and counts
+   * how many ticks it stays out of blocked cells (apart from the cell the food
+   * is in)
+   * 
+   * @param x
+   * @param y
+   * @param angle
+   * @param turn
+   * @param speed
+   * @param ticks -- how far ahead to look
+   * @return the first tick that hits a blocked cell, or ticks + 1 if none do
+   */
+  private int clearTicks(double x, double y, double angle, double turn, double speed, int ticks) {
+    for (int t = 1; t <= ticks; t++) {
+      angle += turn;
+      x = schema.wrapX(x + Math.cos(angle) * speed);
+      y = schema.wrapY(y - Math.sin(angle) * speed);
+      int cell = grid.cellOf(x, y);
+      if (cell != plannedGoal && isBlocked(cell))
+        return t;
+    }
+    return ticks + 1;
+  }
+
+  /**
+   * Adds a cell to the open set
+   * 
+   * @param cell
+   * @param cost -- estimated total cost through the cell
+   */
+  private void push(int cell, double cost) {
+    if (heapSize == heapCells.length) {
+      heapCells = Arrays.copyOf(heapCells, heapSize * 2);
+      heapCosts = Arrays.copyOf(heapCosts, heapSize * 2);
+    }
+    int i = heapSize++;
+    while (i > 0 && heapCosts[(i - 1) / 2] > cost) {
+      heapCells[i] = heapCells[(i - 1) / 2];
+      heapCosts[i] = heapCosts[(i - 1) / 2];
+      i = (i - 1) / 2;
+    }
+    heapCells[i] = cell;
+    heapCosts[i] = cost;
+  }
+
+  /**
+   * Takes the cheapest cell out of the open set
+   * 
+   * @return the cell
+   */
+  private int pop() {
+    int top = heapCells[0];
+    int cell = heapCells[--heapSize];
+    double cost = heapCosts[heapSize];
+    int i = 0;
+    while (i * 2 + 1 < heapSize) {
+      int child = i * 2 + 1;
+      if (child + 1 < heapSize && heapCosts[child + 1] < heapCosts[child])
+        child++;
+      if (heapCosts[child] >= cost)
+        break;
+      heapCells[i] = heapCells[child];
+      heapCosts[i] = heapCosts[child];
+      i = child;
+    }
+    heapCells[i] = cell;
+    heapCosts[i] = cost;
+    return top;
+  }
+
+  /**
+   * Gets the shortest way across a wrapped distance
+   * 
+   * @param delta
+   * @param size -- the width or height of the level
+   * @return delta, or the distance the other way around if that is shorter
+   */
+  private static double shortest(double delta, double size) {
+    if (delta > size / 2)
+      return delta - size;
+    if (delta < -size / 2)
+      return delta + size;
+    return delta;
+  }
+
+  /**
+   * @param angle
+   * @return the same angle, between -pi and pi
+   */
+  private static double normalize(double angle) {
+    angle %= Math.PI * 2;
+    if (angle > Math.PI)
+      angle -= Math.PI * 2;
+    else if (angle < -Math.PI)
+      angle += Math.PI * 2;
+    return angle;
+  }
+}
@@ -0,0 +1,313 @@
+package back;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * This class plays lots of independent games at once, spread over every core,
+ * and sums up how they went. It is meant for balancing levels: run a few
+ * thousand games of each level with some input policy and look at the win rate
+ * and how long the snake lasts.
+ * 
+ * Games only share their LevelSchema, which is safe as long as the schema is
+ * fully loaded (no more obstacles being added) before the run starts.
+ */
+public class BatchRunner {
+
+  // Runs the games
+  private ForkJoinPool pool;
+
+  /**
+   * Constructor, uses one thread per core
+   */
+  public BatchRunner() {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Constructor
+   * 
+   * @param threads -- the number of games to play at once
+   */
+  public BatchRunner(int threads) {
+    pool = new ForkJoinPool(threads);
+  }
+
+  /**
+   * Getter for the number of threads
+   * 
+   * @return the number of games played at once
+   */
+  public int getThreads() {
+    return pool.getParallelism();
+  }
+
+  /**
+   * Plays every game to the end, or until it has gone on for maxTicks ticks.
+   * 
+   * @param games
+   * @param maxTicks
+   * @return how the games went
+   * @throws InterruptedException
+   */
+  public Report run(List<Game> games, long maxTicks) throws InterruptedException {
+    List<Callable<Result>> tasks = new ArrayList<Callable<Result>>(games.size());
+    for (Game game : games)
+      tasks.add(() -> game.play(maxTicks));
+
+    long start = System.nanoTime();
+    List<Future<Result>> futures = pool.invokeAll(tasks);
+    Report report = new Report(getThreads());
+    try {
+      for (Future<Result> future : futures)
+        report.add(future.get());
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("A game failed", e.getCause());
+    }
+    report.wallNanos = System.nanoTime() - start;
+    return report;
+  }
+
+  /**
+   * Stops the threads. The runner can't be used afterwards.
+   */
+  public void shutdown() {
+    pool.shutdown();
+  }
+
+  /**
+   * This class describes one game to play
+   */
+  public static class Game {
+
+    // The level to play
+    private LevelSchema schema;
+
+    // The seed to start the level from
+    private long seed;
+
+    // Makes the input for the game. Inputs usually keep state, so each game gets
+    // its own.
+    private Supplier<TurnInput> policy;
+
+    /**
+     * Constructor, pretty basic
+     * 
+     * @param schema
+     * @param seed
+     * @param policy
+     */
+    public Game(LevelSchema schema, long seed, Supplier<TurnInput> policy) {
+      this.schema = schema;
+      this.seed = seed;
+      this.policy = policy;
+    }
+
+    /**
+     * Plays this game
+     * 
+     * @param maxTicks
+     * @return how it went
+     */
+    Result play(long maxTicks) {
+      long start = System.nanoTime();
+      Level level = new Level(schema, seed);
+      Simulation simulation = new Simulation(level, policy.get());
+      simulation.runAsFastAsPossible(maxTicks);
+      return new Result(schema, seed, level.getState(), simulation.getTicks(),
+          schema.getStartingFoodNumber() - level.getFoodLeft(), System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * This class describes how one game went
+   */
+  public static class Result {
+
+    private LevelSchema schema;
+    private long seed;
+    private Level.State state;
+    private long ticks;
+    private int foodEaten;
+    private long nanos;
+
+    /**
+     * Constructor, pretty basic
+     */
+    Result(LevelSchema schema, long seed, Level.State state, long ticks, int foodEaten, long nanos) {
+      this.schema = schema;
+      this.seed = seed;
+      this.state = state;
+      this.ticks = ticks;
+      this.foodEaten = foodEaten;
+      this.nanos = nanos;
+    }
+
+    /**
+     * @return the level that was played
+     */
+    public LevelSchema getSchema() {
+      return schema;
+    }
+
+    /**
+     * @return the seed the level was started from
+     */
+    public long getSeed() {
+      return seed;
+    }
+
+    /**
+     * @return the state the game ended in (NORMAL if it ran out of ticks)
+     */
+    public Level.State getState() {
+      return state;
+    }
+
+    /**
+     * @return the number of ticks the snake survived
+     */
+    public long getTicks() {
+      return ticks;
+    }
+
+    /**
+     * @return the number of food items eaten
+     */
+    public int getFoodEaten() {
+      return foodEaten;
+    }
+
+    /**
+     * @return the time taken to play the game, in nanoseconds
+     */
+    public long getNanos() {
+      return nanos;
+    }
+  }
+
+  /**
+   * This class sums up how a batch of games went
+   */
+  public static class Report {
+
+    // Every game's result, in the order the games were given
+    private List<Result> results = new ArrayList<Result>();
+
+    // Totals
+    private int wins;
+    private int losses;
+    private long ticks;
+    private long foodEaten;
+    private long gameNanos;
+
+    // Time from the first game starting to the last one finishing
+    private long wallNanos;
+
+    // The number of threads the games were spread over
+    private int threads;
+
+    /**
+     * Constructor
+     * 
+     * @param threads
+     */
+    Report(int threads) {
+      this.threads = threads;
+    }
+
+    /**
+     * Adds a game's result to the totals
+     * 
+     * @param result
+     */
+    void add(Result result) {
+      results.add(result);
+      if (result.getState() == Level.State.WON)
+        wins++;
+      else if (result.getState() == Level.State.LOST)
+        losses++;
+      ticks += result.getTicks();
+      foodEaten += result.getFoodEaten();
+      gameNanos += result.getNanos();
+    }
+
+    /**
+     * @return every game's result
+     */
+    public List<Result> getResults() {
+      return results;
+    }
+
+    /**
+     * @return the number of games won
+     */
+    public int getWins() {
+      return wins;
+    }
+
+    /**
+     * @return the number of games lost
+     */
+    public int getLosses() {
+      return losses;
+    }
+
+    /**
+     * @return the number of games that were still going when they ran out of
+     *         ticks
+     */
+    public int getUnfinished() {
+      return results.size() - wins - losses;
+    }
+
+    /**
+     * @return the total number of ticks simulated
+     */
+    public long getTicks() {
+      return ticks;
+    }
+
+    /**
+     * @return the average number of ticks survived per game
+     */
+    public double getAverageTicks() {
+      return results.isEmpty() ? 0 : ticks / (double) results.size();
+    }
+
+    /**
+     * @return the total number of food items eaten
+     */
+    public long getFoodEaten() {
+      return foodEaten;
+    }
+
+    /**
+     * @return ticks simulated per second by one thread
+     */
+    public double getTicksPerSecondPerCore() {
+      return gameNanos == 0 ? 0 : ticks / (gameNanos / 1e9);
+    }
+
+    /**
+     * @return ticks simulated per second by all the threads together
+     */
+    public double getTicksPerSecond() {
+      return wallNanos == 0 ? 0 : ticks / (wallNanos / 1e9);
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "%d games on %d threads: %d won, %d lost, %d unfinished, %.1f ticks survived on average, %d food eaten, "
+              + "%.0f ticks/s per core, %.0f ticks/s total",
+          results.size(), threads, wins, losses, getUnfinished(), getAverageTicks(), foodEaten,
+          getTicksPerSecondPerCore(), getTicksPerSecond());
+    }
+  }
+}
@@ -25,6 +25,32 @@ public abstract class Circle {
         + Math.pow(c.getCoordinates().getY() - getCoordinates().getY(), 2) < Math.pow(c.getRadius() + getRadius(), 2);
   }
 
+  /**
+   * Determines whether this circle overlaps with a circle anywhere along a
+   * straight move, instead of only where the move ends
+   * 
+   * @param x      -- where the center of the moving circle starts
+   * @param y
+   * @param dx     -- how far it moves
+   * @param dy
+   * @param radius -- of the moving circle
+   * @return whether this circle overlaps with the moving circle at any point
+   */
+  public boolean overlapsWithSweptCircle(double x, double y, double dx, double dy, double radius) {
+    double toX = getCoordinates().getX() - x;
+    double toY = getCoordinates().getY() - y;
+    double lengthSquared = dx * dx + dy * dy;
+
+    // How far along the move the moving circle gets closest
+    double t = 0;
+    if (lengthSquared > 0)
+      t = Math.max(0, Math.min(1, (toX * dx + toY * dy) / lengthSquared));
+
+    double closestX = toX - dx * t;
+    double closestY = toY - dy * t;
+    return closestX * closestX + closestY * closestY < (radius + getRadius()) * (radius + getRadius());
+  }
+
   /**
    * Get the radius of the sphere in the 3D world that corresponds to this circle.
    * The radius varies depending on where this circle is due to distortions
@@ -34,9 +60,7 @@ public abstract class Circle {
    * @return the radius
    */
   public double threeDRadius() {
-    return Math.tan(getCoordinates().xToAngle(getRadius()) / 2.0) * 2
-        * (getCoordinates().getLevelSchema().outerRadius()
-            + Math.cos(getCoordinates().yToAngle(getCoordinates().getY()))
-                * getCoordinates().getLevelSchema().innerRadius());
+    Coordinates coordinates = getCoordinates();
+    return coordinates.threeDRadius(coordinates.getY(), getRadius());
   }
 }
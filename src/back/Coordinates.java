@@ -1,7 +1,8 @@
 package back;
+import java.nio.DoubleBuffer;
+
 import javax.vecmath.Matrix4d;
 import javax.vecmath.Vector3d;
-import javax.vecmath.Vector4d;
 
 /**
  * This class represents a position in the game world.
@@ -74,11 +75,8 @@ public class Coordinates {
    * Makes sure that x is at least 0 but less than the width of the level while
    * maintaining congruence mod the level width.
    */
-  private void handleXWrapAround() { 
-    while (x >= levelSchema.getWidth())
-      x -= levelSchema.getWidth();  
-    while (x < 0)
-      x += levelSchema.getWidth();
+  private void handleXWrapAround() {
+    x = levelSchema.wrapX(x);
   }
 
   /**
@@ -86,12 +84,7 @@ public class Coordinates {
    * maintaining congruence mod the level height.
    */
   private void handleYWrapAround() {
-    if(y >= levelSchema.getHeight())
-      while (y >= levelSchema.getHeight())
-        y -= levelSchema.getHeight();
-    else if(y < 0)
-      while (y < 0)
-        y += levelSchema.getHeight();
+    y = levelSchema.wrapY(y);
   }
 
   /**
@@ -100,7 +93,7 @@ public class Coordinates {
    * @return angle around the torus
    */
   public double xToAngle(double x) {
-    return (x / levelSchema.getWidth()) * 2 * Math.PI;
+    return x * levelSchema.getXAngleScale();
   }
 
   /**
@@ -109,7 +102,7 @@ public class Coordinates {
    * @return angle around the torus
    */
   public double yToAngle(double y) {
-    return (y / levelSchema.getHeight()) * 2 * Math.PI;
+    return y * levelSchema.getYAngleScale();
   }
 
   /**
@@ -145,9 +138,81 @@ public class Coordinates {
    * @return 3D coordinates
    */
   public Vector3d get3DCoordinates(double x, double y, double heightFromSurface) {
-    Vector4d position = new Vector4d(0, 0, 0, 1);
-    getCoordinatesTransformation(x, y, heightFromSurface).transform(position);
-    return new Vector3d(position.x, position.y, position.z);
+    double[] position = new double[3];
+    get3DCoordinates(x, y, heightFromSurface, position, 0);
+    return new Vector3d(position[0], position[1], position[2]);
+  }
+
+  /**
+   * Get the 3D coordinates of a given position without allocating anything.
+   * This is the closed form of getCoordinatesTransformation() applied to
+   * (0, 0, 0, 1).
+   * @param x
+   * @param y
+   * @param heightFromSurface -- height above the surface of the torus
+   * @param out -- x, y and z get written to out[offset], out[offset + 1] and
+   *        out[offset + 2]
+   * @param offset
+   */
+  public void get3DCoordinates(double x, double y, double heightFromSurface,
+      double[] out, int offset) {
+    double longAngle = xToAngle(x);
+    double shortAngle = yToAngle(y);
+    double tubeRadius = levelSchema.innerRadius() + heightFromSurface;
+    double distanceFromAxis = levelSchema.outerRadius() + Math.cos(shortAngle) * tubeRadius;
+    out[offset] = -Math.sin(longAngle) * distanceFromAxis;
+    out[offset + 1] = Math.cos(longAngle) * distanceFromAxis;
+    out[offset + 2] = -Math.sin(shortAngle) * tubeRadius;
+  }
+
+  /**
+   * Get the 3D coordinates of many positions at once. positions and out may be
+   * the same array to convert in place.
+   * @param positions -- (x, y, heightFromSurface) triples, starting at
+   *        positions[positionsOffset]
+   * @param positionsOffset
+   * @param out -- (x, y, z) triples get written here, starting at
+   *        out[outOffset]
+   * @param outOffset
+   * @param count -- the number of positions to convert
+   */
+  public void get3DCoordinates(double[] positions, int positionsOffset,
+      double[] out, int outOffset, int count) {
+    for (int i = 0; i < count; i++)
+      get3DCoordinates(positions[positionsOffset + i * 3], positions[positionsOffset + i * 3 + 1],
+          positions[positionsOffset + i * 3 + 2], out, outOffset + i * 3);
+  }
+
+  /**
+   * Get the 3D coordinates of many positions at once, putting them into a
+   * buffer (for example one that is about to be handed to OpenGL).
+   * @param positions -- (x, y, heightFromSurface) triples, starting at
+   *        positions[positionsOffset]
+   * @param positionsOffset
+   * @param out -- (x, y, z) triples get put here, starting at its current
+   *        position
+   * @param count -- the number of positions to convert
+   */
+  public void get3DCoordinates(double[] positions, int positionsOffset,
+      DoubleBuffer out, int count) {
+    double[] position = new double[3];
+    for (int i = 0; i < count; i++) {
+      get3DCoordinates(positions[positionsOffset + i * 3], positions[positionsOffset + i * 3 + 1],
+          positions[positionsOffset + i * 3 + 2], position, 0);
+      out.put(position);
+    }
+  }
+
+  /**
+   * Get the radius of the sphere in the 3D world that corresponds to a circle
+   * on the plane. See Circle.threeDRadius().
+   * @param y -- y coordinate of the center of the circle
+   * @param radius -- radius of the circle on the plane
+   * @return the radius
+   */
+  public double threeDRadius(double y, double radius) {
+    return Math.tan(xToAngle(radius) / 2.0) * 2
+        * (levelSchema.outerRadius() + Math.cos(yToAngle(y)) * levelSchema.innerRadius());
   }
 
   /**
@@ -168,40 +233,52 @@ public class Coordinates {
    */
   public Matrix4d getCoordinatesTransformation(double x, double y,
       double heightFromSurface) {
-    
-    Matrix4d transformation = new Matrix4d(
-      1, 0, 0, 0, 
-      0, 1, 0, 0, 
-      0, 0, 1, 0,
-      0, 0, 0, 1
-    );
-
-    Matrix4d firstRotation = new Matrix4d();
-    firstRotation.rotZ(xToAngle(x));
-
-    Matrix4d firstTranslation = new Matrix4d(
-      1, 0, 0, 0, 
-      0, 1, 0, levelSchema.outerRadius(), 
-      0, 0, 1, 0, 
-      0, 0, 0, 1
-    );
-
-    Matrix4d secondRotation = new Matrix4d();
-
-    secondRotation.rotX(-yToAngle(y));
-
-    Matrix4d secondTranslation = new Matrix4d(
-      1, 0, 0, 0, 
-      0, 1, 0, levelSchema.innerRadius() + heightFromSurface, 
-      0, 0, 1, 0, 
-      0, 0, 0, 1
-    );
-
-    transformation.mul(firstRotation);
-    transformation.mul(firstTranslation);
-    transformation.mul(secondRotation);
-    transformation.mul(secondTranslation);
+    Matrix4d transformation = new Matrix4d();
+    getCoordinatesTransformation(x, y, heightFromSurface, transformation);
     return transformation;
   }
 
+  /**
+   * Fill in a 4 x 4 matrix such that when you multiply the vector (0, 0, 0, 1)
+   * by it, you get a vector that points to the position at the given
+   * coordinates.
+   * 
+   * The matrix is rotZ(long angle) * translate(0, outer radius, 0) *
+   * rotX(-short angle) * translate(0, inner radius + height, 0), multiplied out
+   * by hand so that nothing gets allocated.
+   * @param x
+   * @param y
+   * @param heightFromSurface
+   * @param transformation -- the matrix to fill in
+   */
+  public void getCoordinatesTransformation(double x, double y,
+      double heightFromSurface, Matrix4d transformation) {
+    double sinLong = Math.sin(xToAngle(x));
+    double cosLong = Math.cos(xToAngle(x));
+    double sinShort = Math.sin(yToAngle(y));
+    double cosShort = Math.cos(yToAngle(y));
+    double tubeRadius = levelSchema.innerRadius() + heightFromSurface;
+    double distanceFromAxis = levelSchema.outerRadius() + cosShort * tubeRadius;
+
+    transformation.m00 = cosLong;
+    transformation.m01 = -sinLong * cosShort;
+    transformation.m02 = -sinLong * sinShort;
+    transformation.m03 = -sinLong * distanceFromAxis;
+
+    transformation.m10 = sinLong;
+    transformation.m11 = cosLong * cosShort;
+    transformation.m12 = cosLong * sinShort;
+    transformation.m13 = cosLong * distanceFromAxis;
+
+    transformation.m20 = 0;
+    transformation.m21 = -sinShort;
+    transformation.m22 = cosShort;
+    transformation.m23 = -sinShort * tubeRadius;
+
+    transformation.m30 = 0;
+    transformation.m31 = 0;
+    transformation.m32 = 0;
+    transformation.m33 = 1;
+  }
+
 }
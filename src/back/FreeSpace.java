@@ -0,0 +1,98 @@
+package back;
+
+import java.util.Random;
+
+/**
+ * This class is a map of where a circle of a given radius can go in a level
+ * without touching any obstacle. The level is rasterized into a grid of cells
+ * no bigger than the radius, and a cell counts as free only if a circle
+ * centered anywhere inside it would be clear of every obstacle (so cells right
+ * at the edge of an obstacle are left out, to be safe). The free cells are all
+ * the same size, so picking one uniformly at random from a list of them, then a
+ * point uniformly inside it, picks a uniformly random free spot in constant
+ * time.
+ */
+public class FreeSpace {
+
+  // Number of cells across and down
+  private int columns;
+  private int rows;
+
+  // Size of each cell
+  private double cellWidth;
+  private double cellHeight;
+
+  // The free cells, as row * columns + column
+  private int[] freeCells;
+
+  /**
+   * Constructor, rasterizes the obstacles of a schema
+   * 
+   * @param schema
+   * @param radius -- the radius of the circles that need to fit
+   */
+  FreeSpace(LevelSchema schema, double radius) {
+    columns = Math.max(1, (int) Math.ceil(schema.getWidth() / radius));
+    rows = Math.max(1, (int) Math.ceil(schema.getHeight() / radius));
+    cellWidth = schema.getWidth() / columns;
+    cellHeight = schema.getHeight() / rows;
+
+    // Grow every obstacle piece by the radius and block all the cells it touches
+    ObstacleIndex obstacles = schema.getObstacleIndex();
+    boolean[] blocked = new boolean[columns * rows];
+    int blockedCount = 0;
+    for (int i = 0; i < obstacles.getPieceCount(); i++) {
+      int firstColumn = Math.max(0, (int) Math.floor((obstacles.getLeftSideX(i) - radius) / cellWidth));
+      int lastColumn = Math.min(columns - 1, (int) Math.floor((obstacles.getRightSideX(i) + radius) / cellWidth));
+      int firstRow = Math.max(0, (int) Math.floor((obstacles.getTopSideY(i) - radius) / cellHeight));
+      int lastRow = Math.min(rows - 1, (int) Math.floor((obstacles.getBottomSideY(i) + radius) / cellHeight));
+      for (int r = firstRow; r <= lastRow; r++)
+        for (int c = firstColumn; c <= lastColumn; c++)
+          if (!blocked[r * columns + c]) {
+            blocked[r * columns + c] = true;
+            blockedCount++;
+          }
+    }
+
+    freeCells = new int[columns * rows - blockedCount];
+    int count = 0;
+    for (int cell = 0; cell < blocked.length; cell++)
+      if (!blocked[cell])
+        freeCells[count++] = cell;
+  }
+
+  /**
+   * @return the number of free cells
+   */
+  public int getFreeCellCount() {
+    return freeCells.length;
+  }
+
+  /**
+   * Get a position inside of a free cell
+   * 
+   * @param freeCell  -- which free cell, from 0 to getFreeCellCount() - 1
+   * @param fractionX -- how far across the cell, from 0 to 1
+   * @param fractionY -- how far down the cell, from 0 to 1
+   * @param out       -- x and y get written to out[0] and out[1]
+   */
+  public void position(int freeCell, double fractionX, double fractionY, double[] out) {
+    int cell = freeCells[freeCell];
+    out[0] = (cell % columns + fractionX) * cellWidth;
+    out[1] = (cell / columns + fractionY) * cellHeight;
+  }
+
+  /**
+   * Picks a uniformly random free position
+   * 
+   * @param random
+   * @param out    -- x and y get written to out[0] and out[1]
+   * @return false if there is no free space at all
+   */
+  public boolean sample(Random random, double[] out) {
+    if (freeCells.length == 0)
+      return false;
+    position(random.nextInt(freeCells.length), random.nextDouble(), random.nextDouble(), out);
+    return true;
+  }
+}
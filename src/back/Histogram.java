@@ -0,0 +1,126 @@
+package back;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * This class counts how often values of each size come up, for things like how
+ * long a tick takes. Any thread can record into it at any time without
+ * locking, and recording doesn't allocate, so it is cheap enough to leave on
+ * in the real game.
+ * 
+ * Values are counted in buckets rather than kept. Values below 16 get a bucket
+ * each. Above that, each power of two is split into 8 buckets, so a
+ * percentile is never off by more than an eighth (12.5%).
+ */
+public class Histogram implements HistogramMXBean {
+
+  // Each power of two is split into 1 << SUB_BUCKET_BITS buckets
+  private final static int SUB_BUCKET_BITS = 3;
+  private final static int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+  // Enough buckets for every non-negative long
+  private final static int BUCKETS = bucketOf(Long.MAX_VALUE) + 1;
+
+  // The number of values in each bucket
+  private AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+  // The number of values, their total, and the largest
+  private AtomicLong count = new AtomicLong();
+  private AtomicLong total = new AtomicLong();
+  private LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+  /**
+   * Records a value. Negative values are counted as 0.
+   * 
+   * @param value
+   */
+  public void record(long value) {
+    value = Math.max(0, value);
+    counts.incrementAndGet(bucketOf(value));
+    count.incrementAndGet();
+    total.addAndGet(value);
+    max.accumulate(value);
+  }
+
+  @Override
+  public long getCount() {
+    return count.get();
+  }
+
+  @Override
+  public double getMean() {
+    long n = count.get();
+    return n == 0 ? 0 : total.get() / (double) n;
+  }
+
+  @Override
+  public long getMax() {
+    return max.get();
+  }
+
+  @Override
+  public long getP50() {
+    return getPercentile(50);
+  }
+
+  @Override
+  public long getP90() {
+    return getPercentile(90);
+  }
+
+  @Override
+  public long getP99() {
+    return getPercentile(99);
+  }
+
+  /**
+   * Works out a percentile. The answer is the top of the bucket that the
+   * percentile falls in (but never more than the largest value recorded).
+   * Values that are being recorded at the same time may or may not be counted.
+   * 
+   * @param percentile -- between 0 and 100
+   * @return the value that percentile percent of values are at or below (0 if
+   *         nothing has been recorded)
+   */
+  public long getPercentile(double percentile) {
+    long n = 0;
+    for (int b = 0; b < BUCKETS; b++)
+      n += counts.get(b);
+    if (n == 0)
+      return 0;
+    long rank = Math.max(1, (long) Math.ceil(n * percentile / 100));
+    long seen = 0;
+    for (int b = 0; b < BUCKETS; b++) {
+      seen += counts.get(b);
+      if (seen >= rank)
+        return Math.min(highestIn(b), getMax());
+    }
+    return getMax();
+  }
+
+  /**
+   * @param value -- not negative
+   * @return the bucket that a value is counted in
+   */
+  private static int bucketOf(long value) {
+    if (value < 2 * SUB_BUCKETS)
+      return (int) value;
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+  }
+
+  /**
+   * @param bucket
+   * @return the largest value that is counted in a bucket
+   */
+  private static long highestIn(int bucket) {
+    if (bucket < 2 * SUB_BUCKETS)
+      return bucket;
+    int shift = bucket / SUB_BUCKETS - 1;
+    long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+    return lowest + (1L << shift) - 1;
+  }
+}
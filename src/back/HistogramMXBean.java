@@ -0,0 +1,38 @@
+package back;
+
+/**
+ * This interface is how a Histogram shows up over JMX. The units are whatever
+ * the histogram was recording (nanoseconds or bytes, going by its name).
+ */
+public interface HistogramMXBean {
+
+  /**
+   * @return the number of values recorded
+   */
+  long getCount();
+
+  /**
+   * @return the average of the values recorded
+   */
+  double getMean();
+
+  /**
+   * @return the largest value recorded
+   */
+  long getMax();
+
+  /**
+   * @return the median
+   */
+  long getP50();
+
+  /**
+   * @return the value that 90% of values are at or below
+   */
+  long getP90();
+
+  /**
+   * @return the value that 99% of values are at or below
+   */
+  long getP99();
+}
@@ -0,0 +1,57 @@
+package back;
+
+/**
+ * This interface is how an InputQueue shows up over JMX (in JConsole, or
+ * whatever is collecting metrics), so that input lag can be watched on a real
+ * player's machine. All times are in milliseconds.
+ */
+public interface InputLatencyMXBean {
+
+  /**
+   * @return the number of key presses that have been turned into turns
+   */
+  long getPressCount();
+
+  /**
+   * @return the number of key presses that were let go of again before the
+   *         next tick (which would have been lost by only looking at which keys
+   *         are down)
+   */
+  long getTapCount();
+
+  /**
+   * @return the average time from a key press to the tick that turns because of
+   *         it
+   */
+  double getMeanTickLatency();
+
+  /**
+   * @return the longest time from a key press to the tick that turns because of
+   *         it
+   */
+  double getMaxTickLatency();
+
+  /**
+   * @return the time from a key press to the tick that turns because of it
+   *         that 99% of presses are within
+   */
+  double getP99TickLatency();
+
+  /**
+   * @return the average time from a key press to the first frame that shows the
+   *         turn
+   */
+  double getMeanFrameLatency();
+
+  /**
+   * @return the longest time from a key press to the first frame that shows the
+   *         turn
+   */
+  double getMaxFrameLatency();
+
+  /**
+   * @return the time from a key press to the first frame that shows the turn
+   *         that 99% of presses are within
+   */
+  double getP99FrameLatency();
+}
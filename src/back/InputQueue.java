@@ -0,0 +1,256 @@
+package back;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * This class turns key presses and releases into turns. Events can come in
+ * from any thread at any time, and are queued up with the time they happened.
+ * At the start of each tick the simulation takes everything that has come in
+ * since the last one, so a key that was pressed and let go between two ticks
+ * still turns the snake for a tick instead of being missed.
+ * 
+ * It also keeps track of how long each key press takes to make a difference:
+ * first to the tick that turns because of it, then to the first frame drawn
+ * from that tick (if the renderer calls frameShown()).
+ */
+public class InputQueue implements TurnInput, InputLatencyMXBean {
+
+  // The name that the queue is registered with over JMX
+  public final static String OBJECT_NAME = "back:type=InputLatency";
+
+  /**
+   * This enum represents the keys that turn the snake
+   */
+  public enum Direction {
+    LEFT, RIGHT
+  }
+
+  /**
+   * This class represents a key being pressed or let go of
+   */
+  private static class Event {
+
+    // Which key
+    final Direction direction;
+
+    // Whether it was pressed (or let go of)
+    final boolean pressed;
+
+    // When it happened (System.nanoTime())
+    final long nanos;
+
+    /**
+     * Constructor, pretty basic
+     * 
+     * @param direction
+     * @param pressed
+     * @param nanos
+     */
+    Event(Direction direction, boolean pressed, long nanos) {
+      this.direction = direction;
+      this.pressed = pressed;
+      this.nanos = nanos;
+    }
+  }
+
+  /**
+   * This class represents a key press that has turned the snake but hasn't been
+   * drawn yet
+   */
+  private static class Pending {
+
+    // The tick that turned because of it
+    final long tick;
+
+    // When the key was pressed (System.nanoTime())
+    final long nanos;
+
+    /**
+     * Constructor, pretty basic
+     * 
+     * @param tick
+     * @param nanos
+     */
+    Pending(long tick, long nanos) {
+      this.tick = tick;
+      this.nanos = nanos;
+    }
+  }
+
+  // Events that haven't been taken by a tick yet
+  private ConcurrentLinkedQueue<Event> events = new ConcurrentLinkedQueue<Event>();
+
+  // Presses waiting to be drawn, in tick order
+  private ConcurrentLinkedQueue<Pending> pending = new ConcurrentLinkedQueue<Pending>();
+
+  // Which keys are down, and which have been pressed since the last tick (only
+  // touched by the simulation thread)
+  private boolean[] down = new boolean[Direction.values().length];
+  private boolean[] pressedSinceTick = new boolean[Direction.values().length];
+
+  // The number of ticks that have asked for an angle
+  private long ticks = 0;
+
+  // Number of presses and taps
+  private AtomicLong presses = new AtomicLong();
+  private AtomicLong taps = new AtomicLong();
+
+  // Press to tick, and press to frame (in nanoseconds)
+  private Histogram tickLatency = new Histogram();
+  private Histogram frameLatency = new Histogram();
+
+  /**
+   * Queues up a key being pressed. Repeats of a key that is being held down
+   * shouldn't be passed in.
+   * 
+   * @param direction
+   * @param nanoTime  -- when it happened, from System.nanoTime()
+   */
+  public void press(Direction direction, long nanoTime) {
+    events.add(new Event(direction, true, nanoTime));
+  }
+
+  /**
+   * Queues up a key being let go of
+   * 
+   * @param direction
+   * @param nanoTime  -- when it happened, from System.nanoTime()
+   */
+  public void release(Direction direction, long nanoTime) {
+    events.add(new Event(direction, false, nanoTime));
+  }
+
+  /**
+   * Takes every event that has come in since the last tick. A key turns the
+   * snake for this tick if it is down now or was pressed at any point since
+   * the last tick.
+   */
+  @Override
+  public double nextAngle(Level level) {
+    ticks++;
+    long now = System.nanoTime();
+    for (Event event = events.poll(); event != null; event = events.poll()) {
+      int d = event.direction.ordinal();
+      if (event.pressed) {
+        down[d] = true;
+        pressedSinceTick[d] = true;
+        presses.incrementAndGet();
+        tickLatency.record(now - event.nanos);
+        pending.add(new Pending(ticks, event.nanos));
+      } else {
+        if (down[d] && pressedSinceTick[d])
+          taps.incrementAndGet();
+        down[d] = false;
+      }
+    }
+
+    double angle = 0;
+    if (turning(Direction.RIGHT))
+      angle -= Simulation.TURN_ANGLE;
+    if (turning(Direction.LEFT))
+      angle += Simulation.TURN_ANGLE;
+    pressedSinceTick[Direction.LEFT.ordinal()] = false;
+    pressedSinceTick[Direction.RIGHT.ordinal()] = false;
+    return angle;
+  }
+
+  /**
+   * @param direction
+   * @return whether a key turns the snake on this tick
+   */
+  private boolean turning(Direction direction) {
+    return down[direction.ordinal()] || pressedSinceTick[direction.ordinal()];
+  }
+
+  /**
+   * Tells the queue that a frame has been shown, so that it can work out how
+   * long the presses that made it in took to show up. Should only be called by
+   * one thread.
+   * 
+   * @param tick     -- the tick that the frame was drawn from (ticks are counted
+   *                 from 1 for the first time nextAngle() was called)
+   * @param nanoTime -- when the frame was shown, from System.nanoTime()
+   */
+  public void frameShown(long tick, long nanoTime) {
+    for (Pending p = pending.peek(); p != null && p.tick <= tick; p = pending.peek()) {
+      pending.poll();
+      frameLatency.record(nanoTime - p.nanos);
+    }
+  }
+
+  /**
+   * Makes the latency numbers available over JMX, replacing any queue that was
+   * registered before. If that doesn't work the game goes on without it.
+   */
+  public void register() {
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = new ObjectName(OBJECT_NAME);
+      if (server.isRegistered(name))
+        server.unregisterMBean(name);
+      server.registerMBean(this, name);
+    } catch (JMException e) {
+      System.err.println("Couldn't register input latency: " + e);
+    }
+  }
+
+  /**
+   * Takes the latency numbers back off of JMX
+   */
+  public void unregister() {
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = new ObjectName(OBJECT_NAME);
+      if (server.isRegistered(name))
+        server.unregisterMBean(name);
+    } catch (JMException e) {
+      System.err.println("Couldn't unregister input latency: " + e);
+    }
+  }
+
+  @Override
+  public long getPressCount() {
+    return presses.get();
+  }
+
+  @Override
+  public long getTapCount() {
+    return taps.get();
+  }
+
+  @Override
+  public double getMeanTickLatency() {
+    return tickLatency.getMean() / 1e6;
+  }
+
+  @Override
+  public double getMaxTickLatency() {
+    return tickLatency.getMax() / 1e6;
+  }
+
+  @Override
+  public double getP99TickLatency() {
+    return tickLatency.getP99() / 1e6;
+  }
+
+  @Override
+  public double getMeanFrameLatency() {
+    return frameLatency.getMean() / 1e6;
+  }
+
+  @Override
+  public double getMaxFrameLatency() {
+    return frameLatency.getMax() / 1e6;
+  }
+
+  @Override
+  public double getP99FrameLatency() {
+    return frameLatency.getP99() / 1e6;
+  }
+}
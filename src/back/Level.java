@@ -1,5 +1,13 @@
 package back;
 
+import java.util.Random;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
 /**
  * This class represents a level of the game.
  * @author Jim
@@ -18,6 +26,21 @@ public class Level {
   // The number of food items left
   private int foodLeft;
   
+  // The seed that random was started from
+  private long seed;
+  
+  // Random number generator for placing food
+  private Random random;
+  
+  // The number of random spots to try for food before searching for one in
+  // order
+  private final static int MAX_RANDOM_FOOD_PLACEMENTS = 64;
+  
+  // The furthest the snake moves between collision checks. Half of the
+  // distance between the centers of two touching segments, so the head can't
+  // pass through the body between checks.
+  private final static double MAX_STEP = Snake.SEGMENT_RADIUS;
+  
   /**
    * The possible states that a level can be in
    * @author Jim
@@ -40,19 +63,114 @@ public class Level {
   private State state = State.NORMAL;
   
   /**
-   * Constructor
-   * @param width
-   * @param height
-   * @param snake
-   * @param foodNumber
-   * @param obstacles
+   * Flight recorder event for one call to update()
+   */
+  @Name("back.Tick")
+  @Label("Tick")
+  @Category({"Snake", "Simulation"})
+  static class TickEvent extends Event {
+    @Label("Schema")
+    String schema;
+    
+    @Label("Snake Length")
+    int snakeLength;
+    
+    @Label("Obstacle Count")
+    int obstacleCount;
+    
+    @Label("Steps")
+    @Description("Number of steps the move was split into")
+    int steps;
+    
+    @Label("Food Left")
+    int foodLeft;
+    
+    @Label("State")
+    String state;
+  }
+  
+  /**
+   * Flight recorder event for the collision checks after one step of the snake
+   */
+  @Name("back.CollisionCheck")
+  @Label("Collision Check")
+  @Category({"Snake", "Simulation"})
+  static class CollisionCheckEvent extends Event {
+    @Label("Schema")
+    String schema;
+    
+    @Label("Snake Length")
+    int snakeLength;
+    
+    @Label("Obstacle Count")
+    int obstacleCount;
+    
+    @Label("Ate Food")
+    boolean ateFood;
+    
+    @Label("Hit Body")
+    boolean hitBody;
+    
+    @Label("Hit Obstacle")
+    boolean hitObstacle;
+  }
+  
+  /**
+   * Flight recorder event for one call to placeFood()
+   */
+  @Name("back.FoodPlacement")
+  @Label("Food Placement")
+  @Category({"Snake", "Simulation"})
+  static class FoodPlacementEvent extends Event {
+    @Label("Schema")
+    String schema;
+    
+    @Label("Snake Length")
+    int snakeLength;
+    
+    @Label("Obstacle Count")
+    int obstacleCount;
+    
+    @Label("Attempts")
+    @Description("Number of spots tried, at random and then in order")
+    int attempts;
+    
+    @Label("Placed")
+    boolean placed;
+  }
+  
+  /**
+   * Constructor, starts from a random seed
+   * @param schema
    */
   public Level(LevelSchema schema) {
+    this(schema, new Random().nextLong());
+  }
+  
+  /**
+   * Constructor. Two levels made from the same schema and seed, and updated
+   * with the same angles, play out exactly the same.
+   * @param schema
+   * @param seed
+   */
+  public Level(LevelSchema schema, long seed) {
+    this(schema, seed, Snake.Movement.FOLLOW);
+  }
+  
+  /**
+   * Constructor
+   * @param schema
+   * @param seed
+   * @param movement -- how the snake's body follows its head
+   */
+  public Level(LevelSchema schema, long seed, Snake.Movement movement) {
 	this.schema = schema;
+    this.seed = seed;
+    this.random = new Random(seed);
     this.snake = new Snake(
       this, schema.getSnakeStartingX(), schema.getSnakeStartingY(),
       schema.getSnakeStartingAngle(), schema.getSnakeStartingSpeed(),
-      schema.getSnakeStartingLength()
+      schema.getSnakeStartingLength(), movement
     );
     this.foodLeft = schema.getStartingFoodNumber();
     placeFood();
@@ -67,38 +185,89 @@ public class Level {
   }
   
   /**
-   * Updates this level for one frame of the game
+   * Updates this level for one frame of the game. A fast snake is moved in
+   * several steps, with collisions checked after each one.
    * @param angle -- the amount that the head of the snake has rotated
    */
   public void update(double angle) {
+    TickEvent event = new TickEvent();
+    event.begin();
     
     // Rotate the head
     if(angle != 0) 
       snake.getHead().rotate(angle);
     
+    int steps = Math.max(1, (int) Math.ceil(snake.getSpeed() / MAX_STEP));
+    for(int i = 0; i < steps && !state.gameOver(); i++)
+      step(snake.getSpeed() / steps);
+    
+    event.end();
+    if(event.shouldCommit()) {
+      event.schema = schema.getName();
+      event.snakeLength = snake.getLength();
+      event.obstacleCount = schema.getObstacles().size();
+      event.steps = steps;
+      event.foodLeft = foodLeft;
+      event.state = state.name();
+      event.commit();
+    }
+  }
+  
+  /**
+   * Moves the snake part of the way for this frame, and checks what the head
+   * ran into. Food and obstacles are checked along the whole move of the head,
+   * not just where it ends up.
+   * @param distance
+   */
+  private void step(double distance) {
+    
     // Move the snake
-    snake.move();
+    snake.move(distance);
+    
+    CollisionCheckEvent event = new CollisionCheckEvent();
+    event.begin();
     
     // Check for collisions with food
-    if(snake.getHead().overlapsWithCircle(food)) {
+    boolean ateFood = food != null && snake.headReached(food);
+    if(ateFood) {
       foodLeft--;
-      snake.new BodySegment();
+      snake.grow();
       if(foodLeft > 0)
         placeFood();
       else
         state = State.WON;
     }
     
-    // Check for collisions with snake
-    for(Snake.Segment s : snake) 
-      if(s != snake.getHead() 
-      && snake.getHead().overlapsWithCircle(s))
-        state = State.LOST;
+    // Check for collisions with snake. The body moves along with the head, and
+    // no step is long enough to go through a segment, so checking where the
+    // head ends up is enough.
+    boolean hitBody = snake.headOverlapsBody();
+    if(hitBody)
+      state = State.LOST;
     
     // Check for collisions with obstacle
-    for(LevelSchema.Obstacle o : schema.getObstacles()) 
-      if(o.overlapsWithCircle(snake.getHead()))
-        state = State.LOST;
+    boolean hitObstacle = snake.headHitObstacle();
+    if(hitObstacle)
+      state = State.LOST;
+    
+    event.end();
+    if(event.shouldCommit()) {
+      event.schema = schema.getName();
+      event.snakeLength = snake.getLength();
+      event.obstacleCount = schema.getObstacles().size();
+      event.ateFood = ateFood;
+      event.hitBody = hitBody;
+      event.hitObstacle = hitObstacle;
+      event.commit();
+    }
+  }
+  
+  /**
+   * Getter for seed
+   * @return the seed that this level's random numbers come from
+   */
+  public long getSeed() {
+    return seed;
   }
   
   /**
@@ -134,23 +303,56 @@ public class Level {
   }
   
   /**
-   * Randomly places food onto the level
+   * Randomly places food onto the level, somewhere that isn't on an obstacle
+   * or under the snake. If there is nowhere to put it, there is no food.
    */
   public void placeFood() {
-    do {
-      food = new Food(new Coordinates(schema, Math.random() * schema.getWidth(), Math.random() * schema.getHeight()));
-    } 
-    while(foodOverlapsWithObstacle());
+    FoodPlacementEvent event = new FoodPlacementEvent();
+    event.begin();
+    int attempts = tryPlacingFood();
+    event.end();
+    if(event.shouldCommit()) {
+      event.schema = schema.getName();
+      event.snakeLength = snake.getLength();
+      event.obstacleCount = schema.getObstacles().size();
+      event.attempts = attempts;
+      event.placed = food != null;
+      event.commit();
+    }
   }
   
   /**
-   * @return whether food overlaps with any obstacle
+   * The search behind placeFood()
+   * @return the number of spots tried
    */
-  private boolean foodOverlapsWithObstacle() {
-    for(LevelSchema.Obstacle o : schema.getObstacles())
-      if(o.overlapsWithCircle(food))
-        return true;
-    return false;
+  private int tryPlacingFood() {
+    FreeSpace space = schema.getFoodSpace();
+    double[] position = new double[2];
+    int attempts = 0;
+    
+    // Random spots are almost always fine
+    for(int i = 0; i < MAX_RANDOM_FOOD_PLACEMENTS && space.sample(random, position); i++) {
+      attempts++;
+      if(!snake.overlapsWithCircle(position[0], position[1], Food.RADIUS)) {
+        food = new Food(new Coordinates(schema, position[0], position[1]));
+        return attempts;
+      }
+    }
+    
+    // The snake must be covering most of the free space, so go through the free
+    // space in order from a random starting point
+    int count = space.getFreeCellCount();
+    int start = count > 0 ? random.nextInt(count) : 0;
+    for(int i = 0; i < count; i++) {
+      attempts++;
+      space.position((start + i) % count, .5, .5, position);
+      if(!snake.overlapsWithCircle(position[0], position[1], Food.RADIUS)) {
+        food = new Food(new Coordinates(schema, position[0], position[1]));
+        return attempts;
+      }
+    }
+    food = null;
+    return attempts;
   }
   
 }
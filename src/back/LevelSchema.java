@@ -1,9 +1,11 @@
 package back;
 
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 
 public class LevelSchema {
+  private int id;
   private String name;
   private double width;
   private double height;
@@ -15,8 +17,33 @@ public class LevelSchema {
   private int startingFoodNumber;
   private List<Obstacle> obstacles;
 
+  // Worked out from width and height once, since they're needed all the time
+  private double inverseWidth;
+  private double inverseHeight;
+  private double xAngleScale;
+  private double yAngleScale;
+  private double innerRadius;
+  private double outerRadius;
+
+  // Index for collision checks against the obstacles, built when first needed
+  private volatile ObstacleIndex obstacleIndex;
+
+  // Where food can go without touching an obstacle, built when first needed
+  private volatile FreeSpace foodSpace;
+
+  // Where a snake's head can go without hitting an obstacle, built when first
+  // needed
+  private volatile NavigationGrid navigationGrid;
+
   public LevelSchema(String name, double width, double height, double snakeStartingX, double snakeStartingY,
       double snakeStartingAngle, double snakeStartingSpeed, int snakeStartingLength, int startingFoodNumber) {
+    this(0, name, width, height, snakeStartingX, snakeStartingY, snakeStartingAngle, snakeStartingSpeed,
+        snakeStartingLength, startingFoodNumber);
+  }
+
+  public LevelSchema(int id, String name, double width, double height, double snakeStartingX, double snakeStartingY,
+      double snakeStartingAngle, double snakeStartingSpeed, int snakeStartingLength, int startingFoodNumber) {
+    this.id = id;
     this.name = name;
     this.width = width;
     this.height = height;
@@ -27,6 +54,22 @@ public class LevelSchema {
     this.snakeStartingLength = snakeStartingLength;
     this.startingFoodNumber = startingFoodNumber;
     this.obstacles = new LinkedList<Obstacle>();
+    this.inverseWidth = 1 / width;
+    this.inverseHeight = 1 / height;
+    this.xAngleScale = Math.PI * 2 / width;
+    this.yAngleScale = Math.PI * 2 / height;
+    this.innerRadius = height / (Math.PI * 2);
+    this.outerRadius = width / (Math.PI * 2);
+  }
+
+  /**
+   * Getter for id
+   * 
+   * @return the id of this schema in the levels database (0 if it didn't come
+   *         from there)
+   */
+  public int getId() {
+    return id;
   }
 
   /**
@@ -129,20 +172,126 @@ public class LevelSchema {
    */
   public void addObstacle(double x, double y, double width, double height) {
     this.obstacles.add(this.new Obstacle(x, y, width, height));
+    this.obstacleIndex = null;
+    this.foodSpace = null;
+    this.navigationGrid = null;
+  }
+
+  /**
+   * Get the index used for checking collisions against the obstacles. It is
+   * built the first time it is asked for, and again if obstacles are added
+   * afterwards.
+   * 
+   * @return obstacle index
+   */
+  public ObstacleIndex getObstacleIndex() {
+    ObstacleIndex index = obstacleIndex;
+    if (index == null) {
+      index = new ObstacleIndex(this, Snake.SEGMENT_RADIUS * 2);
+      obstacleIndex = index;
+    }
+    return index;
+  }
+
+  /**
+   * Get the map of where food can be placed without touching an obstacle. It is
+   * built the first time it is asked for, and again if obstacles are added
+   * afterwards.
+   * 
+   * @return free space for food
+   */
+  public FreeSpace getFoodSpace() {
+    FreeSpace space = foodSpace;
+    if (space == null) {
+      space = new FreeSpace(this, Food.RADIUS);
+      foodSpace = space;
+    }
+    return space;
+  }
+
+  /**
+   * Get the grid that Autopilot plans paths on. It is built the first time it is
+   * asked for, and again if obstacles are added afterwards.
+   * 
+   * @return navigation grid
+   */
+  NavigationGrid getNavigationGrid() {
+    NavigationGrid grid = navigationGrid;
+    if (grid == null) {
+      grid = new NavigationGrid(this, Autopilot.CELL_SIZE, Autopilot.CLEARANCE);
+      navigationGrid = grid;
+    }
+    return grid;
+  }
+
+  /**
+   * Wraps an x coordinate so that it is at least 0 but less than the width of
+   * the level while maintaining congruence mod the level width.
+   * 
+   * @param x
+   * @return wrapped x
+   */
+  public double wrapX(double x) {
+    if (x >= 0 && x < width)
+      return x;
+    x -= Math.floor(x * inverseWidth) * width;
+
+    // Rounding can leave x just outside
+    if (x < 0)
+      x += width;
+    if (x >= width)
+      x -= width;
+    return x;
+  }
+
+  /**
+   * Wraps a y coordinate so that it is at least 0 but less than the height of
+   * the level while maintaining congruence mod the level height.
+   * 
+   * @param y
+   * @return wrapped y
+   */
+  public double wrapY(double y) {
+    if (y >= 0 && y < height)
+      return y;
+    y -= Math.floor(y * inverseHeight) * height;
+
+    // Rounding can leave y just outside
+    if (y < 0)
+      y += height;
+    if (y >= height)
+      y -= height;
+    return y;
+  }
+
+  /**
+   * @return the angle around the torus (the long way) that each unit of x
+   *         covers
+   */
+  public double getXAngleScale() {
+    return xAngleScale;
+  }
+
+  /**
+   * @return the angle around the torus (the short way) that each unit of y
+   *         covers
+   */
+  public double getYAngleScale() {
+    return yAngleScale;
   }
 
   /**
    * @return the innerRadius of the torus that this level schema maps onto
    */
   public double innerRadius() {
-    return getHeight() / (Math.PI * 2);
+    return innerRadius;
   }
 
   /**
    * @return the outerRadius of the torus that this level schema maps onto
    */
   public double outerRadius() {
-    return getWidth() / (Math.PI * 2);
+    return outerRadius;
   }
 
   public class Obstacle {
@@ -151,6 +300,9 @@ public class LevelSchema {
     private double width;
     private double height;
 
+    // The pieces that this obstacle splits into, worked out when first needed
+    private volatile List<Obstacle> pieces;
+
     public Obstacle(double x, double y, double width, double height) {
       this.x = x;
       this.y = y;
@@ -205,11 +357,11 @@ public class LevelSchema {
      * @return whether this obstacle overlaps with c
      */
     public boolean overlapsWithCircle(Circle c) {
+      double x = c.getCoordinates().getX();
+      double y = c.getCoordinates().getY();
       for (Obstacle o : split())
-        if (overlap(o.getCoordinates().getX(), o.getCoordinates().getX() + o.getWidth(),
-            c.getCoordinates().getX() - c.getRadius(), c.getCoordinates().getX() + c.getRadius())
-            && overlap(o.getCoordinates().getY(), o.getCoordinates().getY() + o.getHeight(),
-                c.getCoordinates().getY() - c.getRadius(), c.getCoordinates().getY() + c.getRadius()))
+        if (overlap(o.getX(), o.getX() + o.getWidth(), x - c.getRadius(), x + c.getRadius())
+            && overlap(o.getY(), o.getY() + o.getHeight(), y - c.getRadius(), y + c.getRadius()))
           return true;
       return false;
     }
@@ -239,8 +391,8 @@ public class LevelSchema {
      */
     public double getRightSideX() {
       double toReturn = getLeftSideX() + getWidth();
-      while (toReturn > LevelSchema.this.getWidth())
-        toReturn -= LevelSchema.this.getWidth();
+      if (toReturn > LevelSchema.this.getWidth())
+        toReturn -= Math.ceil(toReturn * inverseWidth - 1) * LevelSchema.this.getWidth();
       return toReturn;
     }
 
@@ -256,8 +408,8 @@ public class LevelSchema {
      */
     public double getBottomSideY() {
       double toReturn = getTopSideY() + getHeight();
-      while (toReturn > LevelSchema.this.getHeight())
-        toReturn -= LevelSchema.this.getHeight();
+      if (toReturn > LevelSchema.this.getHeight())
+        toReturn -= Math.ceil(toReturn * inverseHeight - 1) * LevelSchema.this.getHeight();
       return toReturn;
     }
 
@@ -276,12 +428,24 @@ public class LevelSchema {
 
     /**
      * Splits up the obstacle so that the pieces form the same obstacle, but none of
-     * the pieces hang over the edges of the level.
+     * the pieces hang over the edges of the level. The pieces are only worked out
+     * once, and the list can't be modified.
      * 
      * @return list of obstacles that add up to this one, but don't hang over any
      *         level boundaries
      */
     public List<Obstacle> split() {
+      if (pieces == null)
+        pieces = Collections.unmodifiableList(splitPieces());
+      return pieces;
+    }
+
+    /**
+     * Does the work for split()
+     * 
+     * @return list of obstacles that add up to this one
+     */
+    private List<Obstacle> splitPieces() {
       List<Obstacle> obstacles = new LinkedList<Obstacle>();
 
       if (getRightSideX() <= getLeftSideX()) {
@@ -9,14 +9,39 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
 public class LevelSchemaLoader {
   private Connection db;
 
+  /**
+   * Flight recorder event for one call to loadLevelSchemas()
+   */
+  @Name("back.LevelLoad")
+  @Label("Level Load")
+  @Category({ "Snake", "Loading" })
+  static class LoadEvent extends Event {
+    @Label("Level Count")
+    int levelCount;
+
+    @Label("Obstacle Count")
+    int obstacleCount;
+
+    @Label("Schema Names")
+    String schemaNames;
+  }
+
   public LevelSchemaLoader() throws SQLException {
     db = DriverManager.getConnection("jdbc:sqlite:levels.db");
   }
 
   public List<LevelSchema> loadLevelSchemas() throws SQLException {
+    LoadEvent event = new LoadEvent();
+    event.begin();
+
     ResultSet levelsResultSet = db.createStatement()
         .executeQuery("select `id`, `name`, `width`, `height`, `snake_starting_x`, `snake_starting_y`,\n"
             + "`snake_starting_angle`, `snake_starting_speed`, `snake_starting_length`, `food_starting_number`\n"
@@ -25,7 +50,7 @@ public class LevelSchemaLoader {
     Map<Integer, LevelSchema> levelSchemas = new HashMap<Integer, LevelSchema>();
     while (levelsResultSet.next()) {
       levelSchemas.put(levelsResultSet.getInt("id"),
-          new LevelSchema(levelsResultSet.getString("name"), levelsResultSet.getDouble("width"),
+          new LevelSchema(levelsResultSet.getInt("id"), levelsResultSet.getString("name"), levelsResultSet.getDouble("width"),
               levelsResultSet.getDouble("height"), levelsResultSet.getDouble("snake_starting_x"),
               levelsResultSet.getDouble("snake_starting_y"), levelsResultSet.getDouble("snake_starting_angle"),
               levelsResultSet.getDouble("snake_starting_speed"), levelsResultSet.getInt("snake_starting_length"),
@@ -34,14 +59,28 @@ public class LevelSchemaLoader {
 
     ResultSet obstaclesResultSet = db.createStatement()
         .executeQuery("select `level_id`, `x`, `y`, `width`, `height`\n" + "from obstacles");
+    int obstacleCount = 0;
     while (obstaclesResultSet.next()) {
       LevelSchema levelSchema = levelSchemas.get(obstaclesResultSet.getInt("level_id"));
       if (levelSchema == null)
         continue;
+      obstacleCount++;
       levelSchema.addObstacle(obstaclesResultSet.getDouble("x"), obstaclesResultSet.getDouble("y"),
           obstaclesResultSet.getDouble("width"), obstaclesResultSet.getDouble("height"));
     }
 
-    return new LinkedList<LevelSchema>(levelSchemas.values());
+    List<LevelSchema> result = new LinkedList<LevelSchema>(levelSchemas.values());
+
+    event.end();
+    if (event.shouldCommit()) {
+      StringBuilder names = new StringBuilder();
+      for (LevelSchema schema : result)
+        names.append(names.length() == 0 ? "" : ", ").append(schema.getName());
+      event.levelCount = result.size();
+      event.obstacleCount = obstacleCount;
+      event.schemaNames = names.toString();
+      event.commit();
+    }
+    return result;
   }
 }
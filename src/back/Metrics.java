@@ -0,0 +1,216 @@
+package back;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * This class keeps the timing histograms for a running game: how long each
+ * tick takes and how much it allocates, how long each frame and each part of
+ * a frame takes to draw, and how far apart frames are. Each histogram can be
+ * published over JMX, so performance can be watched on a player's machine and
+ * not just in the benchmarks.
+ * 
+ * Every histogram is registered under back:type=Timing with its name, and
+ * render times get a name per SubDisplay. Times are in nanoseconds.
+ */
+public class Metrics {
+
+  // The domain and type that histograms are registered under
+  private final static String OBJECT_NAME_PREFIX = "back:type=Timing,name=";
+
+  // Time spent in Level.update, per tick
+  private Histogram tickTime = new Histogram();
+
+  // Bytes allocated by Level.update, per tick
+  private Histogram tickAllocatedBytes = new Histogram();
+
+  // Time spent drawing a whole frame
+  private Histogram frameTime = new Histogram();
+
+  // Time from the start of one frame to the start of the next
+  private Histogram frameInterval = new Histogram();
+
+  // Time spent drawing each part of a frame, by name
+  private Map<String, Histogram> renderTimes = new ConcurrentHashMap<String, Histogram>();
+
+  // When the last frame started (0 before the first one)
+  private volatile long lastFrameStart = 0;
+
+  // Whether the histograms are published over JMX
+  private volatile boolean registered = false;
+
+  // For measuring allocation, or null if the JVM can't
+  private com.sun.management.ThreadMXBean threads;
+
+  /**
+   * Constructor, turns on allocation measurement if the JVM supports it
+   */
+  public Metrics() {
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean) {
+      threads = (com.sun.management.ThreadMXBean) bean;
+      if (!threads.isThreadAllocatedMemorySupported())
+        threads = null;
+      else if (!threads.isThreadAllocatedMemoryEnabled())
+        threads.setThreadAllocatedMemoryEnabled(true);
+    }
+  }
+
+  /**
+   * @return time spent in Level.update per tick
+   */
+  public Histogram getTickTime() {
+    return tickTime;
+  }
+
+  /**
+   * @return bytes allocated by Level.update per tick (empty if the JVM can't
+   *         measure it)
+   */
+  public Histogram getTickAllocatedBytes() {
+    return tickAllocatedBytes;
+  }
+
+  /**
+   * @return time spent drawing a whole frame
+   */
+  public Histogram getFrameTime() {
+    return frameTime;
+  }
+
+  /**
+   * @return time from the start of one frame to the start of the next
+   */
+  public Histogram getFrameInterval() {
+    return frameInterval;
+  }
+
+  /**
+   * Gets the histogram for drawing one part of a frame, making it if this is
+   * the first time
+   * 
+   * @param name -- which part (a SubDisplay's class name)
+   * @return time spent drawing that part
+   */
+  public Histogram getRenderTime(String name) {
+    Histogram histogram = renderTimes.get(name);
+    if (histogram != null)
+      return histogram;
+    histogram = renderTimes.computeIfAbsent(name, n -> new Histogram());
+    if (registered)
+      register("Render." + name, histogram);
+    return histogram;
+  }
+
+  /**
+   * The average number of frames per second so far
+   * 
+   * @return frames per second (0 before the second frame)
+   */
+  public double getFramesPerSecond() {
+    double mean = frameInterval.getMean();
+    return mean == 0 ? 0 : 1e9 / mean;
+  }
+
+  /**
+   * The number of bytes that the calling thread has allocated so far, for
+   * passing to tickFinished()
+   * 
+   * @return bytes allocated, or 0 if the JVM can't measure it
+   */
+  public long allocatedBytes() {
+    if (threads == null)
+      return 0;
+    return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  /**
+   * Records a tick. Should be called on the thread that ran the tick.
+   * 
+   * @param nanos                  -- how long it took
+   * @param allocatedBytesAtStart -- allocatedBytes() from just before it
+   */
+  public void tickFinished(long nanos, long allocatedBytesAtStart) {
+    tickTime.record(nanos);
+    if (threads != null)
+      tickAllocatedBytes.record(allocatedBytes() - allocatedBytesAtStart);
+  }
+
+  /**
+   * Records the start of a frame
+   * 
+   * @param nanoTime -- from System.nanoTime()
+   */
+  public void frameStarted(long nanoTime) {
+    if (lastFrameStart != 0)
+      frameInterval.record(nanoTime - lastFrameStart);
+    lastFrameStart = nanoTime;
+  }
+
+  /**
+   * Publishes every histogram over JMX, replacing any that were there before.
+   * If that doesn't work the game goes on without it.
+   */
+  public void register() {
+    registered = true;
+    register("Tick", tickTime);
+    register("TickAllocatedBytes", tickAllocatedBytes);
+    register("Frame", frameTime);
+    register("FrameInterval", frameInterval);
+    for (Map.Entry<String, Histogram> entry : renderTimes.entrySet())
+      register("Render." + entry.getKey(), entry.getValue());
+  }
+
+  /**
+   * Takes every histogram back off of JMX
+   */
+  public void unregister() {
+    registered = false;
+    unregister("Tick");
+    unregister("TickAllocatedBytes");
+    unregister("Frame");
+    unregister("FrameInterval");
+    for (String name : renderTimes.keySet())
+      unregister("Render." + name);
+  }
+
+  /**
+   * Publishes one histogram over JMX
+   * 
+   * @param name
+   * @param histogram
+   */
+  private static void register(String name, Histogram histogram) {
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName objectName = new ObjectName(OBJECT_NAME_PREFIX + name);
+      if (server.isRegistered(objectName))
+        server.unregisterMBean(objectName);
+      server.registerMBean(histogram, objectName);
+    } catch (JMException e) {
+      System.err.println("Couldn't register " + name + " timing: " + e);
+    }
+  }
+
+  /**
+   * Takes one histogram back off of JMX
+   * 
+   * @param name
+   */
+  private static void unregister(String name) {
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName objectName = new ObjectName(OBJECT_NAME_PREFIX + name);
+      if (server.isRegistered(objectName))
+        server.unregisterMBean(objectName);
+    } catch (JMException e) {
+      System.err.println("Couldn't unregister " + name + " timing: " + e);
+    }
+  }
+}
@@ -0,0 +1,126 @@
+package back;
+
+/**
+ * This class is a coarse grid over a level marking where the head of a snake
+ * can't go because of obstacles. It only depends on the schema, so it is built
+ * once per schema and shared by every Autopilot playing that level.
+ */
+class NavigationGrid {
+
+  // Number of cells across and down
+  private int columns;
+  private int rows;
+
+  // Size of each cell
+  private double cellWidth;
+  private double cellHeight;
+
+  // Whether the head would hit an obstacle at the center of each cell
+  private boolean[] blocked;
+
+  /**
+   * Constructor
+   * 
+   * @param schema
+   * @param cellSize   -- the ideal size of each cell
+   * @param clearance  -- how far the center of a free cell has to be from any
+   *                   obstacle
+   */
+  NavigationGrid(LevelSchema schema, double cellSize, double clearance) {
+    columns = Math.max(1, (int) Math.round(schema.getWidth() / cellSize));
+    rows = Math.max(1, (int) Math.round(schema.getHeight() / cellSize));
+    cellWidth = schema.getWidth() / columns;
+    cellHeight = schema.getHeight() / rows;
+    blocked = new boolean[columns * rows];
+    ObstacleIndex obstacles = schema.getObstacleIndex();
+    for (int cell = 0; cell < blocked.length; cell++)
+      blocked[cell] = obstacles.overlapsWithCircle(centerX(cell), centerY(cell), clearance);
+  }
+
+  /**
+   * @return the number of cells across
+   */
+  int getColumns() {
+    return columns;
+  }
+
+  /**
+   * @return the number of cells down
+   */
+  int getRows() {
+    return rows;
+  }
+
+  /**
+   * @return the total number of cells
+   */
+  int getCellCount() {
+    return blocked.length;
+  }
+
+  /**
+   * @param cell
+   * @return whether an obstacle is in the way at a cell
+   */
+  boolean isBlocked(int cell) {
+    return blocked[cell];
+  }
+
+  /**
+   * @param x
+   * @param y
+   * @return the cell containing a point on the level
+   */
+  int cellOf(double x, double y) {
+    int column = Math.min(columns - 1, Math.max(0, (int) (x / cellWidth)));
+    int row = Math.min(rows - 1, Math.max(0, (int) (y / cellHeight)));
+    return row * columns + column;
+  }
+
+  /**
+   * @param cell
+   * @return x coordinate of the center of a cell
+   */
+  double centerX(int cell) {
+    return (cell % columns + .5) * cellWidth;
+  }
+
+  /**
+   * @param cell
+   * @return y coordinate of the center of a cell
+   */
+  double centerY(int cell) {
+    return (cell / columns + .5) * cellHeight;
+  }
+
+  /**
+   * Get a neighbouring cell, wrapping around the edges of the level
+   * 
+   * @param cell
+   * @param dc   -- columns to move across
+   * @param dr   -- rows to move down
+   * @return the neighbouring cell
+   */
+  int neighbour(int cell, int dc, int dr) {
+    int column = (cell % columns + dc + columns) % columns;
+    int row = (cell / columns + dr + rows) % rows;
+    return row * columns + column;
+  }
+
+  /**
+   * Estimates the length of the shortest path between two cells, going the
+   * short way around the level in each direction and allowing diagonal moves.
+   * Never overestimates, so A* stays optimal.
+   * 
+   * @param from
+   * @param to
+   * @return estimated distance in level units
+   */
+  double distance(int from, int to) {
+    int dc = Math.abs(from % columns - to % columns);
+    int dr = Math.abs(from / columns - to / columns);
+    double dx = Math.min(dc, columns - dc) * cellWidth;
+    double dy = Math.min(dr, rows - dr) * cellHeight;
+    return Math.max(dx, dy) + (Math.sqrt(2) - 1) * Math.min(dx, dy);
+  }
+}
@@ -0,0 +1,238 @@
+package back;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class is a read-only index of the obstacles in a level, for answering
+ * "does this circle hit an obstacle?" quickly. The obstacles are split up
+ * front so that no piece hangs over the edge of the level, the pieces are
+ * stored as primitive arrays, and a grid over the level lists which pieces
+ * touch each cell. A query only looks at the pieces in the cells the circle
+ * touches and doesn't allocate anything.
+ */
+public class ObstacleIndex {
+
+  // Edges of each piece
+  private double[] lefts;
+  private double[] rights;
+  private double[] tops;
+  private double[] bottoms;
+
+  // Number of cells across and down
+  private int columns;
+  private int rows;
+
+  // Size of each cell
+  private double cellWidth;
+  private double cellHeight;
+
+  // The pieces touching cell c are cellPieces[cellStarts[c]] up to (but not
+  // including) cellPieces[cellStarts[c + 1]]
+  private int[] cellStarts;
+  private int[] cellPieces;
+
+  /**
+   * Constructor, builds the index for the obstacles of a schema
+   * 
+   * @param schema
+   * @param cellSize -- the ideal size of each grid cell
+   */
+  ObstacleIndex(LevelSchema schema, double cellSize) {
+    List<LevelSchema.Obstacle> pieces = new ArrayList<LevelSchema.Obstacle>();
+    for (LevelSchema.Obstacle o : schema.getObstacles())
+      pieces.addAll(o.split());
+
+    lefts = new double[pieces.size()];
+    rights = new double[pieces.size()];
+    tops = new double[pieces.size()];
+    bottoms = new double[pieces.size()];
+    for (int i = 0; i < pieces.size(); i++) {
+      LevelSchema.Obstacle piece = pieces.get(i);
+      lefts[i] = piece.getX();
+      rights[i] = piece.getX() + piece.getWidth();
+      tops[i] = piece.getY();
+      bottoms[i] = piece.getY() + piece.getHeight();
+    }
+
+    columns = Math.max(1, (int) (schema.getWidth() / cellSize));
+    rows = Math.max(1, (int) (schema.getHeight() / cellSize));
+    cellWidth = schema.getWidth() / columns;
+    cellHeight = schema.getHeight() / rows;
+
+    // Count the pieces in each cell, turn the counts into starting points, then
+    // fill the cells in
+    cellStarts = new int[columns * rows + 1];
+    for (int i = 0; i < lefts.length; i++)
+      for (int r = rowOf(tops[i]); r <= rowOf(bottoms[i]); r++)
+        for (int c = columnOf(lefts[i]); c <= columnOf(rights[i]); c++)
+          cellStarts[r * columns + c + 1]++;
+    for (int cell = 0; cell < columns * rows; cell++)
+      cellStarts[cell + 1] += cellStarts[cell];
+    cellPieces = new int[cellStarts[columns * rows]];
+    int[] filled = new int[columns * rows];
+    for (int i = 0; i < lefts.length; i++)
+      for (int r = rowOf(tops[i]); r <= rowOf(bottoms[i]); r++)
+        for (int c = columnOf(lefts[i]); c <= columnOf(rights[i]); c++) {
+          int cell = r * columns + c;
+          cellPieces[cellStarts[cell] + filled[cell]++] = i;
+        }
+  }
+
+  /**
+   * @return the number of pieces that the obstacles were split into
+   */
+  public int getPieceCount() {
+    return lefts.length;
+  }
+
+  /**
+   * @param piece
+   * @return x coordinate of the left side of a piece
+   */
+  public double getLeftSideX(int piece) {
+    return lefts[piece];
+  }
+
+  /**
+   * @param piece
+   * @return x coordinate of the right side of a piece
+   */
+  public double getRightSideX(int piece) {
+    return rights[piece];
+  }
+
+  /**
+   * @param piece
+   * @return y coordinate of the top side of a piece
+   */
+  public double getTopSideY(int piece) {
+    return tops[piece];
+  }
+
+  /**
+   * @param piece
+   * @return y coordinate of the bottom side of a piece
+   */
+  public double getBottomSideY(int piece) {
+    return bottoms[piece];
+  }
+
+  /**
+   * Finds whether any obstacle overlaps with a given circle
+   * 
+   * @param c
+   * @return whether an obstacle overlaps with c
+   */
+  public boolean overlapsWithCircle(Circle c) {
+    return overlapsWithCircle(c.getCoordinates().getX(), c.getCoordinates().getY(), c.getRadius());
+  }
+
+  /**
+   * Finds whether any obstacle overlaps with a circle. Like
+   * Obstacle.overlapsWithCircle, this really tests the square around the
+   * circle.
+   * 
+   * @param x      -- x coordinate of the center of the circle
+   * @param y      -- y coordinate of the center of the circle
+   * @param radius
+   * @return whether an obstacle overlaps with the circle
+   */
+  public boolean overlapsWithCircle(double x, double y, double radius) {
+    int lastRow = rowOf(y + radius);
+    int lastColumn = columnOf(x + radius);
+    for (int r = rowOf(y - radius); r <= lastRow; r++) {
+      for (int c = columnOf(x - radius); c <= lastColumn; c++) {
+        int cell = r * columns + c;
+        for (int i = cellStarts[cell]; i < cellStarts[cell + 1]; i++) {
+          int piece = cellPieces[i];
+          if (lefts[piece] < x + radius && rights[piece] > x - radius && tops[piece] < y + radius
+              && bottoms[piece] > y - radius)
+            return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Finds whether any obstacle overlaps with a circle anywhere along a straight
+   * move. Like overlapsWithCircle, this really tests the square around the
+   * circle, so it tests whether the move passes through an obstacle grown by
+   * the radius on every side. The move isn't wrapped around the edges of the
+   * level; it is just cut off there.
+   * 
+   * @param x      -- where the center of the circle starts
+   * @param y
+   * @param dx     -- how far it moves
+   * @param dy
+   * @param radius
+   * @return whether an obstacle overlaps with the circle at any point
+   */
+  public boolean sweptOverlapsWithCircle(double x, double y, double dx, double dy, double radius) {
+    int lastRow = rowOf(Math.max(y, y + dy) + radius);
+    int lastColumn = columnOf(Math.max(x, x + dx) + radius);
+    for (int r = rowOf(Math.min(y, y + dy) - radius); r <= lastRow; r++) {
+      for (int c = columnOf(Math.min(x, x + dx) - radius); c <= lastColumn; c++) {
+        int cell = r * columns + c;
+        for (int i = cellStarts[cell]; i < cellStarts[cell + 1]; i++) {
+          int piece = cellPieces[i];
+          if (moveEnters(x, dx, lefts[piece] - radius, rights[piece] + radius, y, dy, tops[piece] - radius,
+              bottoms[piece] + radius))
+            return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Finds whether a straight move from (x, y) by (dx, dy) passes through the
+   * inside of a rectangle (not just along its edge)
+   * 
+   * @return whether the move enters the rectangle
+   */
+  private static boolean moveEnters(double x, double dx, double left, double right, double y, double dy, double top,
+      double bottom) {
+    double enter = 0;
+    double leave = 1;
+
+    if (dx == 0) {
+      if (x <= left || x >= right)
+        return false;
+    } else {
+      double t1 = (left - x) / dx;
+      double t2 = (right - x) / dx;
+      enter = Math.max(enter, Math.min(t1, t2));
+      leave = Math.min(leave, Math.max(t1, t2));
+    }
+
+    if (dy == 0) {
+      if (y <= top || y >= bottom)
+        return false;
+    } else {
+      double t1 = (top - y) / dy;
+      double t2 = (bottom - y) / dy;
+      enter = Math.max(enter, Math.min(t1, t2));
+      leave = Math.min(leave, Math.max(t1, t2));
+    }
+
+    return enter < leave;
+  }
+
+  /**
+   * @param x
+   * @return the column containing an x coordinate, clamped to the level
+   */
+  private int columnOf(double x) {
+    return Math.min(columns - 1, Math.max(0, (int) Math.floor(x / cellWidth)));
+  }
+
+  /**
+   * @param y
+   * @return the row containing a y coordinate, clamped to the level
+   */
+  private int rowOf(double y) {
+    return Math.min(rows - 1, Math.max(0, (int) Math.floor(y / cellHeight)));
+  }
+}
@@ -0,0 +1,192 @@
+package back;
+
+/**
+ * This class is the path that the head of a snake has taken, for the body to
+ * follow. It is a list of straight runs, each an angle and the distance that
+ * the head has gone at that angle, kept in a ring of primitive arrays.
+ * 
+ * Runs are numbered in the order they were added. The head is always on the
+ * newest run, and each body segment is on some older run. Runs older than the
+ * one the tail is on are released so that their slots can be used again, so a
+ * snake that keeps turning doesn't keep allocating.
+ * 
+ * Each run also remembers where it started and how far the head had gone in
+ * total when it did. Those totals only go up, so the point any distance along
+ * the path can be found with a binary search.
+ */
+class PathHistory {
+
+  // Number of runs that there is room for before the ring has to grow (a power
+  // of two)
+  private final static int INITIAL_CAPACITY = 64;
+
+  // Angle and distance of each run, at run number & mask
+  private double[] angles = new double[INITIAL_CAPACITY];
+  private double[] distances = new double[INITIAL_CAPACITY];
+
+  // Where each run started, and the total distance the head had gone by then
+  private double[] startXs = new double[INITIAL_CAPACITY];
+  private double[] startYs = new double[INITIAL_CAPACITY];
+  private double[] startDistances = new double[INITIAL_CAPACITY];
+  private int mask = INITIAL_CAPACITY - 1;
+
+  // Numbers of the oldest run still needed and the newest run
+  private int oldest = 0;
+  private int newest = 0;
+
+  /**
+   * Constructor
+   * 
+   * @param angle -- the angle of the first run
+   * @param x     -- where the first run starts
+   * @param y
+   */
+  PathHistory(double angle, double x, double y) {
+    angles[0] = angle;
+    startXs[0] = x;
+    startYs[0] = y;
+  }
+
+  /**
+   * Getter for newest
+   * 
+   * @return the number of the run that the head is on
+   */
+  int getNewest() {
+    return newest;
+  }
+
+  /**
+   * @param run
+   * @return the angle of a run
+   */
+  double getAngle(int run) {
+    return angles[run & mask];
+  }
+
+  /**
+   * @param run
+   * @return the distance that the head went along a run
+   */
+  double getDistance(int run) {
+    return distances[run & mask];
+  }
+
+  /**
+   * @param run
+   * @return the x coordinate where a run started
+   */
+  double getStartX(int run) {
+    return startXs[run & mask];
+  }
+
+  /**
+   * @param run
+   * @return the y coordinate where a run started
+   */
+  double getStartY(int run) {
+    return startYs[run & mask];
+  }
+
+  /**
+   * @param run
+   * @return the total distance the head had gone when a run started
+   */
+  double getStartDistance(int run) {
+    return startDistances[run & mask];
+  }
+
+  /**
+   * @return the total distance the head has gone
+   */
+  double getTotalDistance() {
+    return startDistances[newest & mask] + distances[newest & mask];
+  }
+
+  /**
+   * Finds the run that a point on the path is on. A point from before the
+   * oldest run is counted as being on the oldest run, as if it went on straight
+   * back from where it started.
+   * 
+   * @param distance -- total distance the head had gone when it was at the
+   *                 point
+   * @param latest   -- the point is known to be on this run or an older one
+   * @return the run
+   */
+  int find(double distance, int latest) {
+    int low = oldest;
+    int high = latest;
+    while (high - low > 0) {
+      int middle = low + (high - low + 1) / 2;
+      if (startDistances[middle & mask] <= distance)
+        low = middle;
+      else
+        high = middle - 1;
+    }
+    return low;
+  }
+
+  /**
+   * Starts a new run at an angle
+   * 
+   * @param angle
+   * @param x     -- where the run starts (where the head is)
+   * @param y
+   */
+  void add(double angle, double x, double y) {
+    if (newest - oldest == mask)
+      grow();
+    double startDistance = getTotalDistance();
+    newest++;
+    angles[newest & mask] = angle;
+    distances[newest & mask] = 0;
+    startXs[newest & mask] = x;
+    startYs[newest & mask] = y;
+    startDistances[newest & mask] = startDistance;
+  }
+
+  /**
+   * Adds distance on to the newest run
+   * 
+   * @param distance
+   */
+  void addDistance(double distance) {
+    distances[newest & mask] += distance;
+  }
+
+  /**
+   * Lets go of the runs before a run, so that their slots can be reused
+   * 
+   * @param run -- the oldest run that is still needed
+   */
+  void release(int run) {
+    oldest = run;
+  }
+
+  /**
+   * Doubles the size of the ring, keeping every run at run number & mask
+   */
+  private void grow() {
+    int newMask = angles.length * 2 - 1;
+    angles = grow(angles, newMask);
+    distances = grow(distances, newMask);
+    startXs = grow(startXs, newMask);
+    startYs = grow(startYs, newMask);
+    startDistances = grow(startDistances, newMask);
+    mask = newMask;
+  }
+
+  /**
+   * Copies the runs still needed from one array into a bigger one
+   * 
+   * @param array
+   * @param newMask -- one less than the size of the new array
+   * @return the new array
+   */
+  private double[] grow(double[] array, int newMask) {
+    double[] grown = new double[newMask + 1];
+    for (int run = oldest; run - newest <= 0; run++)
+      grown[run & newMask] = array[run & mask];
+    return grown;
+  }
+}
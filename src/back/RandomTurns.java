@@ -0,0 +1,40 @@
+package back;
+
+import java.util.Random;
+
+/**
+ * This class is an input that wanders: it keeps turning left, turning right or
+ * going straight for a random number of ticks, then picks again. It is handy
+ * for soak tests and batch runs that need some input but not a good player.
+ */
+public class RandomTurns implements TurnInput {
+
+  // The most ticks to keep doing the same thing for
+  private final static int MAX_TICKS = 40;
+
+  // Where the decisions come from
+  private Random random;
+
+  // The angle being turned by, and for how many more ticks
+  private double angle = 0;
+  private int ticksLeft = 0;
+
+  /**
+   * Constructor
+   * 
+   * @param seed
+   */
+  public RandomTurns(long seed) {
+    random = new Random(seed);
+  }
+
+  @Override
+  public double nextAngle(Level level) {
+    if (ticksLeft == 0) {
+      angle = (random.nextInt(3) - 1) * Simulation.TURN_ANGLE;
+      ticksLeft = 1 + random.nextInt(MAX_TICKS);
+    }
+    ticksLeft--;
+    return angle;
+  }
+}
@@ -0,0 +1,168 @@
+package back;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * This class plays back a recording made by ReplayRecorder. It reads the
+ * recording as it goes, so recordings of any length can be played back without
+ * loading them into memory. Start a Level from the recorded schema and seed,
+ * then drive it with this as its input:
+ * 
+ * <pre>
+ * Replay replay = new Replay(in);
+ * Level level = new Level(schemaWithId(replay.getSchemaId()), replay.getSeed());
+ * new Simulation(level, replay).runAsFastAsPossible(Long.MAX_VALUE);
+ * </pre>
+ */
+public class Replay implements TurnInput, Closeable {
+
+  // Where the recording comes from
+  private DataInputStream in;
+
+  // Values from the header
+  private long seed;
+  private int schemaId;
+
+  // The angle of the current run, and how many ticks of it are left
+  private double runAngle;
+  private long runLeft = 0;
+
+  // The multiple of TURN_ANGLE of the last quantized run
+  private long lastSteps = 0;
+
+  // Whether the end of the recording has been reached
+  private boolean finished = false;
+
+  /**
+   * Constructor, reads the header straight away
+   * 
+   * @param in
+   * @throws IOException if this isn't a recording this version can play
+   */
+  public Replay(InputStream in) throws IOException {
+    this.in = new DataInputStream(new BufferedInputStream(in));
+    if (this.in.readInt() != ReplayRecorder.MAGIC)
+      throw new IOException("Not a replay");
+    long version = readVarint();
+    if (version != ReplayRecorder.VERSION)
+      throw new IOException("Unsupported replay version " + version);
+    seed = this.in.readLong();
+    schemaId = (int) readVarint();
+  }
+
+  /**
+   * Getter for seed
+   * 
+   * @return the seed of the recorded level
+   */
+  public long getSeed() {
+    return seed;
+  }
+
+  /**
+   * Getter for schemaId
+   * 
+   * @return the id of the recorded level's schema
+   */
+  public int getSchemaId() {
+    return schemaId;
+  }
+
+  /**
+   * Get the next recorded angle. Once the recording runs out, the snake just
+   * goes straight.
+   */
+  @Override
+  public double nextAngle(Level level) {
+    if (isExhausted())
+      return 0;
+    runLeft--;
+    return runAngle;
+  }
+
+  /**
+   * Whether every recorded tick has been played back
+   */
+  @Override
+  public boolean isExhausted() {
+    if (runLeft == 0 && !finished) {
+      try {
+        readRun();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+    return runLeft == 0;
+  }
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+
+  /**
+   * Reads the next run, or notices the end of the recording. A recording that
+   * stops cleanly between runs without the end marker (like one from a game
+   * that was killed before it could be closed) ends there too.
+   * 
+   * @throws IOException
+   */
+  private void readRun() throws IOException {
+    int first = in.read();
+    if (first < 0) {
+      finished = true;
+      return;
+    }
+    long length = readVarint(first);
+    if (length == 0) {
+      finished = true;
+      return;
+    }
+    long tag = readVarint();
+    if ((tag & 1) == ReplayRecorder.RAW) {
+      runAngle = in.readDouble();
+    } else {
+      long delta = tag >>> 1;
+      lastSteps += (delta >>> 1) ^ -(delta & 1);
+      runAngle = lastSteps * Simulation.TURN_ANGLE;
+    }
+    runLeft = length;
+  }
+
+  /**
+   * Reads a number written by ReplayRecorder.writeVarint
+   * 
+   * @return value
+   * @throws IOException
+   */
+  private long readVarint() throws IOException {
+    return readVarint(in.readByte());
+  }
+
+  /**
+   * Reads a number written by ReplayRecorder.writeVarint, whose first byte has
+   * already been read
+   * 
+   * @param first
+   * @return value
+   * @throws IOException
+   */
+  private long readVarint(int first) throws IOException {
+    long value = 0;
+    int b = first;
+    for (int shift = 0; shift < 64; shift += 7) {
+      if (shift > 0)
+        b = in.readByte();
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0)
+        return value;
+    }
+    throw new EOFException("Malformed varint");
+  }
+}
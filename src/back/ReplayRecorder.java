@@ -0,0 +1,154 @@
+package back;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * This class records a game so that it can be played back with Replay. It sits
+ * between the real input and the simulation, writing down every angle that it
+ * passes through.
+ * 
+ * A recording is a small header (magic number, format version, the level's
+ * seed and the schema id) followed by runs of ticks that all turned by the same
+ * angle. Each run is a varint tick count followed by the angle. Angles that are
+ * whole multiples of Simulation.TURN_ANGLE (which is all of them when a person
+ * is playing) are written as a zigzag varint of the change in multiple from the
+ * previous run, so a run usually takes two or three bytes. Any other angle is
+ * written out as a raw double. A tick count of 0 ends the recording.
+ */
+public class ReplayRecorder implements TurnInput, Closeable {
+
+  // Identifies a replay file
+  final static int MAGIC = 0x33445352; // "3DSR"
+
+  // The version of the format written
+  final static int VERSION = 1;
+
+  // Tags for how an angle is written, kept in the lowest bit of the first varint
+  final static int QUANTIZED = 0;
+  final static int RAW = 1;
+
+  // Where the recording goes
+  private DataOutputStream out;
+
+  // The input being recorded
+  private TurnInput input;
+
+  // The angle of the current run, and how many ticks it has gone on for
+  private double runAngle;
+  private long runLength = 0;
+
+  // The multiple of TURN_ANGLE that the last quantized run was written with
+  private long lastSteps = 0;
+
+  /**
+   * Constructor, writes the header straight away (and makes sure it gets out of
+   * the buffer, so even a game that never gets closed leaves a recording that
+   * can be played back)
+   * 
+   * @param out   -- where to write the recording
+   * @param level -- the level being recorded, before its first update
+   * @param input -- the input to record
+   * @throws IOException
+   */
+  public ReplayRecorder(OutputStream out, Level level, TurnInput input) throws IOException {
+    this.out = new DataOutputStream(new BufferedOutputStream(out));
+    this.input = input;
+    this.out.writeInt(MAGIC);
+    writeVarint(VERSION);
+    this.out.writeLong(level.getSeed());
+    writeVarint(level.getSchema().getId());
+    this.out.flush();
+  }
+
+  /**
+   * Gets the angle from the real input and records it
+   */
+  @Override
+  public double nextAngle(Level level) {
+    double angle = input.nextAngle(level);
+    try {
+      record(angle);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return angle;
+  }
+
+  /**
+   * Records one tick's angle
+   * 
+   * @param angle
+   * @throws IOException
+   */
+  public void record(double angle) throws IOException {
+    if (runLength > 0 && Double.compare(angle, runAngle) == 0) {
+      runLength++;
+      return;
+    }
+    writeRun();
+    runAngle = angle;
+    runLength = 1;
+  }
+
+  /**
+   * Writes out whatever hasn't been written yet, ends the recording and closes
+   * the stream
+   */
+  @Override
+  public void close() throws IOException {
+    writeRun();
+    writeVarint(0);
+    out.close();
+  }
+
+  /**
+   * Writes out the current run, if there is one
+   * 
+   * @throws IOException
+   */
+  private void writeRun() throws IOException {
+    if (runLength == 0)
+      return;
+    writeVarint(runLength);
+    long steps = Math.round(runAngle / Simulation.TURN_ANGLE);
+    if (steps * Simulation.TURN_ANGLE == runAngle) {
+      writeVarint((zigzag(steps - lastSteps) << 1) | QUANTIZED);
+      lastSteps = steps;
+    } else {
+      writeVarint(RAW);
+      out.writeDouble(runAngle);
+    }
+    runLength = 0;
+  }
+
+  /**
+   * Writes a non-negative number 7 bits at a time, lowest bits first, with the
+   * top bit of each byte set if more bytes follow
+   * 
+   * @param value
+   * @throws IOException
+   */
+  private void writeVarint(long value) throws IOException {
+    while ((value & ~0x7FL) != 0) {
+      out.writeByte((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    out.writeByte((int) value);
+  }
+
+  /**
+   * Maps signed numbers onto unsigned ones so that small negative numbers stay
+   * small: 0, -1, 1, -2, 2... become 0, 1, 2, 3, 4...
+   * 
+   * @param value
+   * @return zigzag encoded value
+   */
+  static long zigzag(long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+}
@@ -0,0 +1,219 @@
+package back;
+
+import java.util.Arrays;
+
+/**
+ * This class is a uniform grid over a level that keeps track of which cell
+ * each snake segment is in, so that collision checks only have to look at the
+ * segments near a point instead of all of them. The grid wraps around at the
+ * edges of the level just like the level does.
+ * 
+ * Segments are identified by an int id (their index in the snake). Each cell
+ * holds a doubly linked list of ids threaded through primitive arrays, so
+ * moving a segment from one cell to another doesn't allocate anything.
+ */
+class SegmentGrid {
+
+  // Marks the end of a cell's list, or an id that isn't in the grid
+  private final static int NONE = -1;
+
+  // Number of cells across and down
+  private int columns;
+  private int rows;
+
+  // Size of each cell
+  private double cellWidth;
+  private double cellHeight;
+
+  // The first id in each cell
+  private int[] cellHeads;
+
+  // The cell that each id is in, and its neighbours in that cell's list
+  private int[] cells;
+  private int[] nexts;
+  private int[] prevs;
+
+  /**
+   * This interface is for visiting the ids near a point
+   */
+  interface Visitor {
+
+    /**
+     * Visits an id
+     * 
+     * @param id
+     * @return true to stop visiting
+     */
+    boolean visit(int id);
+  }
+
+  /**
+   * Constructor. Cells are made at least minCellSize on each side, so asking for
+   * everything near a point finds everything within minCellSize of it.
+   * 
+   * @param schema
+   * @param minCellSize
+   * @param capacity    -- the number of ids there is room for up front
+   */
+  SegmentGrid(LevelSchema schema, double minCellSize, int capacity) {
+    columns = Math.max(1, (int) (schema.getWidth() / minCellSize));
+    rows = Math.max(1, (int) (schema.getHeight() / minCellSize));
+    cellWidth = schema.getWidth() / columns;
+    cellHeight = schema.getHeight() / rows;
+    cellHeads = new int[columns * rows];
+    Arrays.fill(cellHeads, NONE);
+    cells = new int[0];
+    nexts = new int[0];
+    prevs = new int[0];
+    ensureCapacity(capacity);
+  }
+
+  /**
+   * Makes sure that there is room for ids up to capacity - 1
+   * 
+   * @param capacity
+   */
+  void ensureCapacity(int capacity) {
+    if (capacity <= cells.length)
+      return;
+    int oldCapacity = cells.length;
+    int newCapacity = Math.max(capacity, oldCapacity * 2);
+    cells = Arrays.copyOf(cells, newCapacity);
+    nexts = Arrays.copyOf(nexts, newCapacity);
+    prevs = Arrays.copyOf(prevs, newCapacity);
+    Arrays.fill(cells, oldCapacity, newCapacity, NONE);
+  }
+
+  /**
+   * Puts an id into the grid at a position on the level
+   * 
+   * @param id
+   * @param x
+   * @param y
+   */
+  void insert(int id, double x, double y) {
+    link(id, cellOf(x, y));
+  }
+
+  /**
+   * Takes every id out of the grid
+   */
+  void clear() {
+    Arrays.fill(cellHeads, NONE);
+    Arrays.fill(cells, NONE);
+  }
+
+  /**
+   * Takes an id out of the grid
+   * 
+   * @param id
+   */
+  void remove(int id) {
+    if (cells[id] != NONE)
+      unlink(id);
+  }
+
+  /**
+   * Tells the grid that an id has moved. Only touches the cell lists if the id
+   * has actually crossed into another cell.
+   * 
+   * @param id
+   * @param x
+   * @param y
+   */
+  void move(int id, double x, double y) {
+    int cell = cellOf(x, y);
+    if (cell == cells[id])
+      return;
+    remove(id);
+    link(id, cell);
+  }
+
+  /**
+   * Visits every id in the cell containing a point and in the cells around it,
+   * wrapping around the edges of the level. That covers everything within the
+   * minimum cell size of the point (and possibly some things further away).
+   * 
+   * @param x
+   * @param y
+   * @param visitor
+   * @return whether the visitor asked to stop
+   */
+  boolean visitNear(double x, double y, Visitor visitor) {
+    int column = columnOf(x);
+    int row = rowOf(y);
+
+    // With fewer than 3 columns (or rows) the neighbours wrap onto each other,
+    // so only visit each one once
+    int firstColumn = columns >= 3 ? -1 : 0;
+    int lastColumn = columns >= 2 ? 1 : 0;
+    int firstRow = rows >= 3 ? -1 : 0;
+    int lastRow = rows >= 2 ? 1 : 0;
+
+    for (int dc = firstColumn; dc <= lastColumn; dc++) {
+      int c = (column + dc + columns) % columns;
+      for (int dr = firstRow; dr <= lastRow; dr++) {
+        int r = (row + dr + rows) % rows;
+        for (int id = cellHeads[r * columns + c]; id != NONE; id = nexts[id])
+          if (visitor.visit(id))
+            return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @param x
+   * @param y
+   * @return the cell containing a point
+   */
+  private int cellOf(double x, double y) {
+    return rowOf(y) * columns + columnOf(x);
+  }
+
+  /**
+   * @param x
+   * @return the column containing an x coordinate
+   */
+  private int columnOf(double x) {
+    return Math.min(columns - 1, Math.max(0, (int) (x / cellWidth)));
+  }
+
+  /**
+   * @param y
+   * @return the row containing a y coordinate
+   */
+  private int rowOf(double y) {
+    return Math.min(rows - 1, Math.max(0, (int) (y / cellHeight)));
+  }
+
+  /**
+   * Adds an id to the front of a cell's list
+   * 
+   * @param id
+   * @param cell
+   */
+  private void link(int id, int cell) {
+    cells[id] = cell;
+    prevs[id] = NONE;
+    nexts[id] = cellHeads[cell];
+    if (cellHeads[cell] != NONE)
+      prevs[cellHeads[cell]] = id;
+    cellHeads[cell] = id;
+  }
+
+  /**
+   * Takes an id out of its cell's list
+   * 
+   * @param id
+   */
+  private void unlink(int id) {
+    if (prevs[id] != NONE)
+      nexts[prevs[id]] = nexts[id];
+    else
+      cellHeads[cells[id]] = nexts[id];
+    if (nexts[id] != NONE)
+      prevs[nexts[id]] = prevs[id];
+    cells[id] = NONE;
+  }
+}
@@ -0,0 +1,229 @@
+package back;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * This class drives a level forward one tick at a time. It does not know
+ * anything about windows or OpenGL, so it can step a level on a fixed timer
+ * for the real game, or as fast as possible for headless runs.
+ * 
+ * Only the thread running the simulation touches the level. Anything else (the
+ * renderers) should look at the latest Snapshot instead, which a fixed rate
+ * run publishes after every tick.
+ */
+public class Simulation {
+
+  // The amount that the head rotates in one tick while turning
+  public final static double TURN_ANGLE = (Math.PI * 2 * 5) / 360.0;
+
+  // The tick rate of the normal game
+  public final static double DEFAULT_TICKS_PER_SECOND = 50;
+
+  // How many ticks the fixed rate loop may fall behind before it gives up on
+  // catching up
+  private final static int MAX_TICKS_BEHIND = 5;
+
+  // The level being simulated
+  private Level level;
+
+  // Where the turns come from
+  private TurnInput input;
+
+  // The number of ticks simulated so far
+  private long ticks = 0;
+
+  // Time spent inside of Level.update, in nanoseconds
+  private long updateNanos = 0;
+
+  // Whether a fixed rate run should keep going
+  private volatile boolean running = false;
+
+  // How long each tick of the current fixed rate run lasts (0 if there isn't
+  // one)
+  private long tickNanos = 0;
+
+  // Where tick timings are recorded (or null)
+  private Metrics metrics;
+
+  // The latest picture of the level
+  private AtomicReference<Snapshot> snapshot = new AtomicReference<Snapshot>();
+
+  /**
+   * Constructor, pretty basic
+   * 
+   * @param level
+   * @param input
+   */
+  public Simulation(Level level, TurnInput input) {
+    this(level, input, null);
+  }
+
+  /**
+   * Constructor, records how long each tick takes and how much it allocates
+   * 
+   * @param level
+   * @param input
+   * @param metrics -- where to record tick timings (or null)
+   */
+  public Simulation(Level level, TurnInput input, Metrics metrics) {
+    this.level = level;
+    this.input = input;
+    this.metrics = metrics;
+    publish();
+  }
+
+  /**
+   * Getter for level
+   * 
+   * @return level
+   */
+  public Level getLevel() {
+    return level;
+  }
+
+  /**
+   * Get the latest picture of the level. This is safe to call from any thread.
+   * 
+   * @return snapshot
+   */
+  public Snapshot getSnapshot() {
+    return snapshot.get();
+  }
+
+  /**
+   * Takes a new picture of the level for getSnapshot() to hand out. Should only
+   * be called from the thread running the simulation.
+   */
+  public void publish() {
+    snapshot.set(new Snapshot(level, ticks, snapshot.get(), tickNanos));
+  }
+
+  /**
+   * Getter for ticks
+   * 
+   * @return the number of ticks simulated so far
+   */
+  public long getTicks() {
+    return ticks;
+  }
+
+  /**
+   * The number of ticks that could be simulated per second, only counting the
+   * time spent updating the level (not time spent waiting for the next tick).
+   * 
+   * @return ticks per second, or 0 if nothing has been simulated yet
+   */
+  public double getTicksPerSecond() {
+    if (updateNanos == 0)
+      return 0;
+    return ticks / (updateNanos / 1e9);
+  }
+
+  /**
+   * Advances the level by one tick, unless the game is already over or the
+   * input has run out.
+   * 
+   * @return whether a tick was simulated
+   */
+  public boolean step() {
+    if (level.getState().gameOver() || input.isExhausted())
+      return false;
+    double angle = input.nextAngle(level);
+    long allocatedBytes = metrics != null ? metrics.allocatedBytes() : 0;
+    long start = System.nanoTime();
+    level.update(angle);
+    long nanos = System.nanoTime() - start;
+    updateNanos += nanos;
+    if (metrics != null)
+      metrics.tickFinished(nanos, allocatedBytes);
+    ticks++;
+    return true;
+  }
+
+  /**
+   * Steps the level back to back until the game is over or maxTicks ticks have
+   * been simulated.
+   * 
+   * @param maxTicks
+   * @return the number of ticks simulated
+   */
+  public long runAsFastAsPossible(long maxTicks) {
+    long count = 0;
+    while (count < maxTicks && step())
+      count++;
+    return count;
+  }
+
+  /**
+   * Steps the level at a fixed rate on the calling thread until the game is
+   * over, maxTicks ticks have been simulated or stop() is called, publishing a
+   * snapshot after each tick. If the loop falls too far behind (a slow tick, a
+   * stalled machine) it skips ahead rather than running a burst of ticks to
+   * catch up.
+   * 
+   * @param ticksPerSecond
+   * @param maxTicks
+   * @return the number of ticks simulated
+   * @throws InterruptedException
+   */
+  public long runFixedRate(double ticksPerSecond, long maxTicks) throws InterruptedException {
+    running = true;
+    return runWhileRunning(ticksPerSecond, maxTicks);
+  }
+
+  /**
+   * The loop behind runFixedRate(), for when running has already been set
+   * 
+   * @param ticksPerSecond
+   * @param maxTicks
+   * @return the number of ticks simulated
+   * @throws InterruptedException
+   */
+  private long runWhileRunning(double ticksPerSecond, long maxTicks) throws InterruptedException {
+    long period = (long) (1e9 / ticksPerSecond);
+    tickNanos = period;
+    long nextTick = System.nanoTime();
+    long count = 0;
+    while (running && count < maxTicks && step()) {
+      publish();
+      count++;
+      nextTick += period;
+      long wait = nextTick - System.nanoTime();
+      if (wait > 0)
+        Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+      else if (-wait > period * MAX_TICKS_BEHIND)
+        nextTick = System.nanoTime();
+    }
+    running = false;
+    return count;
+  }
+
+  /**
+   * Starts a fixed rate run with no tick limit on a new daemon thread
+   * 
+   * @param ticksPerSecond
+   * @return the thread
+   */
+  public Thread start(double ticksPerSecond) {
+    // Set here rather than on the new thread, so that stop() works even if it
+    // is called before the thread gets going
+    running = true;
+    Thread thread = new Thread(() -> {
+      try {
+        runWhileRunning(ticksPerSecond, Long.MAX_VALUE);
+      } catch (InterruptedException e) {
+        // Just stop
+      }
+    }, "Simulation");
+    thread.setDaemon(true);
+    thread.start();
+    return thread;
+  }
+
+  /**
+   * Makes a fixed rate run return after its current tick
+   */
+  public void stop() {
+    running = false;
+  }
+}
@@ -1,10 +1,13 @@
 package back;
 
+import java.util.Arrays;
 import java.util.Iterator;
 
 /**
- * This class represents the snake. Basically, it's a glorified linked list data
- * structure.
+ * This class represents the snake. The segments are stored as parallel arrays
+ * of primitives (index 0 is the head, the last index is the tail) rather than
+ * as one object per segment, so long snakes stay compact in memory. The
+ * Segment objects handed out are views onto those arrays.
  * 
  * @author Jim
  */
@@ -14,20 +17,79 @@ public class Snake implements Iterable<Snake.Segment> {
   final static double SEGMENT_RADIUS = 10;
 
   // Spacing between snake segments
-  final static double SEGMENT_SPACING = SEGMENT_RADIUS * 2 + 2;
+  public final static double SEGMENT_SPACING = SEGMENT_RADIUS * 2 + 2;
 
-  // The level that this snake lives on
-  private Level level;
+  /**
+   * The ways that the body can follow the head
+   * 
+   * @author Jim
+   */
+  public enum Movement {
+    // Each segment moves along the path by the snake's speed every tick, keeping
+    // track of the run it is on. This is how the game has always played, and
+    // what recorded games expect.
+    FOLLOW,
+
+    // Each segment is put straight at its distance behind the head along the
+    // path, found by a binary search over the runs of the path. Nothing is
+    // kept per segment, and segments never drift from their spacing.
+    ARC_LENGTH
+  }
+
+  // Number of segments that there is room for before the arrays have to grow
+  private final static int INITIAL_CAPACITY = 16;
+
+  // The level schema that this snake lives on
+  private LevelSchema schema;
 
   // The head of this snake
   private Head head;
 
-  // The tail of this snake
-  private Segment tail;
-
   // The speed of this snake
   private double speed;
 
+  // How the body follows the head
+  private Movement movement;
+
+  // The number of segments in this snake
+  private int length;
+
+  // Position of each segment
+  private double[] xs = new double[INITIAL_CAPACITY];
+  private double[] ys = new double[INITIAL_CAPACITY];
+
+  // The path that the head has taken
+  private PathHistory path;
+
+  // The run of the path that each segment is on (only kept for the body with
+  // Movement.FOLLOW)
+  private int[] runs = new int[INITIAL_CAPACITY];
+
+  // Distance of each body segment along the run that it is on. The head uses
+  // the distance of its run instead. (Only kept with Movement.FOLLOW.)
+  private double[] distancesAlongRuns = new double[INITIAL_CAPACITY];
+
+  // Where the head started its last move, and how far it went
+  private double moveX;
+  private double moveY;
+  private double moveDX;
+  private double moveDY;
+
+  // Keeps track of which segments are near each other, for collision checks (or
+  // null if whoever made the snake keeps track of that instead)
+  private SegmentGrid grid;
+
+  // Looks for body segments that overlap with the head
+  private SegmentGrid.Visitor headOverlapChecker = id -> id != 0 && segmentsOverlap(0, id);
+
+  // The circle being checked by circleOverlapChecker
+  private double circleX;
+  private double circleY;
+  private double circleRadius;
+
+  // Looks for segments that overlap with the circle above
+  private SegmentGrid.Visitor circleOverlapChecker = id -> overlaps(id, circleX, circleY, circleRadius);
+
   /**
    * Constructor
    * 
@@ -37,12 +99,55 @@ public class Snake implements Iterable<Snake.Segment> {
    * @param length
    */
   public Snake(Level level, double x, double y, double angle, double speed, int length) {
-    this.level = level;
+    this(level, x, y, angle, speed, length, Movement.FOLLOW);
+  }
+
+  /**
+   * Constructor
+   * 
+   * @param coordinates (of the head)
+   * @param angle       (of the head)
+   * @param speed
+   * @param length
+   * @param movement    -- how the body follows the head
+   */
+  public Snake(Level level, double x, double y, double angle, double speed, int length, Movement movement) {
+    this(level.getSchema(), x, y, angle, speed, length, movement, true);
+  }
+
+  /**
+   * Constructor, for a snake that isn't the only one on its level. A snake
+   * that isn't indexed doesn't keep a grid of its own segments, for when the
+   * level already puts every snake's segments into one grid. It still answers
+   * headOverlapsBody() and overlapsWithCircle(), but by checking every segment.
+   * 
+   * @param schema
+   * @param coordinates (of the head)
+   * @param angle       (of the head)
+   * @param speed
+   * @param length
+   * @param movement    -- how the body follows the head
+   * @param indexed     -- whether to keep a grid of the segments
+   */
+  Snake(LevelSchema schema, double x, double y, double angle, double speed, int length, Movement movement,
+      boolean indexed) {
+    this.schema = schema;
     this.speed = speed;
-    head = new Head(new Coordinates(level.getSchema(), x, y), angle);
-    tail = head;
+    this.movement = movement;
+    xs[0] = schema.wrapX(x);
+    ys[0] = schema.wrapY(y);
+    moveX = xs[0];
+    moveY = ys[0];
+    path = new PathHistory(angle, xs[0], ys[0]);
+    runs[0] = path.getNewest();
+    this.length = 1;
+    if (indexed) {
+      grid = new SegmentGrid(schema, SEGMENT_RADIUS * 2, INITIAL_CAPACITY);
+      grid.insert(0, xs[0], ys[0]);
+    }
+    head = new Head();
     for (; length - 1 > 0; length--)
-      new BodySegment();
+      grow();
   }
 
   /**
@@ -55,21 +160,327 @@ public class Snake implements Iterable<Snake.Segment> {
   }
 
   /**
-   * Get an iterator that iterates over the segments of this snake
+   * Getter for speed
+   * 
+   * @return the distance the snake moves each tick
+   */
+  public double getSpeed() {
+    return speed;
+  }
+
+  /**
+   * Getter for movement
+   * 
+   * @return how the body follows the head
+   */
+  public Movement getMovement() {
+    return movement;
+  }
+
+  /**
+   * Getter for length
+   * 
+   * @return the number of segments, including the head
+   */
+  public int getLength() {
+    return length;
+  }
+
+  /**
+   * Get the x coordinate of a segment without going through a Segment object
+   * 
+   * @param index (0 is the head)
+   * @return x coordinate
+   */
+  public double getX(int index) {
+    return xs[index];
+  }
+
+  /**
+   * Get the y coordinate of a segment without going through a Segment object
+   * 
+   * @param index (0 is the head)
+   * @return y coordinate
+   */
+  public double getY(int index) {
+    return ys[index];
+  }
+
+  /**
+   * Get an iterator that iterates over the segments of this snake. The head is
+   * always the same object, but the body segments share one view that is moved
+   * along as the iterator advances, so they shouldn't be kept around past the
+   * next call to next().
    * 
    * @return iterator
    */
   @Override
   public Iterator<Segment> iterator() {
-    return new SegmentIterator(head);
+    return new SegmentIterator();
   }
 
   /**
    * Move the snake by moving all of its segments
    */
   public void move() {
-    for (Segment s : this)
-      s.move();
+    move(speed);
+  }
+
+  /**
+   * Move the snake by moving all of its segments a given distance, which can
+   * be a part of its speed
+   * 
+   * @param distance
+   */
+  void move(double distance) {
+    head.move(distance);
+    if (movement == Movement.ARC_LENGTH) {
+      int run = runs[0];
+      for (int i = 1; i < length; i++)
+        run = placeAlongPath(i, run);
+      path.release(run);
+    } else {
+      for (int i = 1; i < length; i++)
+        moveRecursive(i, distance);
+      path.release(runs[length - 1]);
+    }
+    if (grid != null)
+      for (int i = 0; i < length; i++)
+        grid.move(i, xs[i], ys[i]);
+  }
+
+  /**
+   * Adds a body segment right behind the tail of the snake
+   */
+  void grow() {
+    ensureCapacity(length + 1);
+    if (movement == Movement.ARC_LENGTH) {
+      placeAlongPath(length, runs[0]);
+      if (grid != null)
+        grid.insert(length, xs[length], ys[length]);
+      length++;
+      return;
+    }
+    int tail = length - 1;
+    double angleFromTail = path.getAngle(runs[tail]) + Math.PI;
+    xs[length] = schema.wrapX(xs[tail] + Math.cos(angleFromTail) * SEGMENT_SPACING);
+    ys[length] = schema.wrapY(ys[tail] - Math.sin(angleFromTail) * SEGMENT_SPACING);
+    runs[length] = runs[tail];
+    distancesAlongRuns[length] = distanceAlongRun(tail) - SEGMENT_SPACING;
+    if (grid != null)
+      grid.insert(length, xs[length], ys[length]);
+    length++;
+  }
+
+  /**
+   * Determines whether the head ran into an obstacle anywhere along its last
+   * move
+   * 
+   * @return whether the head hit an obstacle
+   */
+  boolean headHitObstacle() {
+    ObstacleIndex obstacles = schema.getObstacleIndex();
+    if (obstacles.sweptOverlapsWithCircle(moveX, moveY, moveDX, moveDY, SEGMENT_RADIUS))
+      return true;
+    return moveWrapped()
+        && obstacles.sweptOverlapsWithCircle(xs[0] - moveDX, ys[0] - moveDY, moveDX, moveDY, SEGMENT_RADIUS);
+  }
+
+  /**
+   * Determines whether the head touched a circle (food) anywhere along its last
+   * move
+   * 
+   * @param c
+   * @return whether the head touched c
+   */
+  boolean headReached(Circle c) {
+    if (c.overlapsWithSweptCircle(moveX, moveY, moveDX, moveDY, SEGMENT_RADIUS))
+      return true;
+    return moveWrapped() && c.overlapsWithSweptCircle(xs[0] - moveDX, ys[0] - moveDY, moveDX, moveDY, SEGMENT_RADIUS);
+  }
+
+  /**
+   * Obstacles and food don't reach across the edges of the level, so if the
+   * head went across one on its last move, the move gets checked from both
+   * sides of it
+   * 
+   * @return whether the head went across an edge of the level on its last move
+   */
+  private boolean moveWrapped() {
+    return xs[0] != moveX + moveDX || ys[0] != moveY + moveDY;
+  }
+
+  /**
+   * Determines whether the head overlaps with any of the body segments. Only
+   * the segments in the grid cells around the head get checked.
+   * 
+   * @return whether the head overlaps with the body
+   */
+  boolean headOverlapsBody() {
+    return visitNear(xs[0], ys[0], headOverlapChecker);
+  }
+
+  /**
+   * Determines whether any segment overlaps with a circle that is no bigger
+   * than a segment
+   * 
+   * @param x
+   * @param y
+   * @param radius -- at most SEGMENT_RADIUS
+   * @return whether the snake overlaps with the circle
+   */
+  boolean overlapsWithCircle(double x, double y, double radius) {
+    circleX = x;
+    circleY = y;
+    circleRadius = radius;
+    return visitNear(x, y, circleOverlapChecker);
+  }
+
+  /**
+   * Visits the segments near a point, or every segment if there's no grid
+   * 
+   * @param x
+   * @param y
+   * @param visitor
+   * @return true if the visitor stopped early
+   */
+  private boolean visitNear(double x, double y, SegmentGrid.Visitor visitor) {
+    if (grid != null)
+      return grid.visitNear(x, y, visitor);
+    for (int i = 0; i < length; i++)
+      if (visitor.visit(i))
+        return true;
+    return false;
+  }
+
+  /**
+   * Determines whether two segments overlap, the same way that
+   * Circle.overlapsWithCircle does
+   * 
+   * @param a
+   * @param b
+   * @return whether segments a and b overlap
+   */
+  private boolean segmentsOverlap(int a, int b) {
+    return overlaps(b, xs[a], ys[a], SEGMENT_RADIUS);
+  }
+
+  /**
+   * Determines whether a segment overlaps with a circle, the same way that
+   * Circle.overlapsWithCircle does
+   * 
+   * @param index
+   * @param x
+   * @param y
+   * @param radius
+   * @return whether the segment overlaps with the circle
+   */
+  private boolean overlaps(int index, double x, double y, double radius) {
+    double dx = x - xs[index];
+    double dy = y - ys[index];
+    return dx * dx + dy * dy < (radius + SEGMENT_RADIUS) * (radius + SEGMENT_RADIUS);
+  }
+
+  /**
+   * Makes sure that the arrays have room for at least capacity segments
+   * 
+   * @param capacity
+   */
+  private void ensureCapacity(int capacity) {
+    if (capacity <= xs.length)
+      return;
+    int newCapacity = Math.max(capacity, xs.length * 2);
+    xs = Arrays.copyOf(xs, newCapacity);
+    ys = Arrays.copyOf(ys, newCapacity);
+    runs = Arrays.copyOf(runs, newCapacity);
+    distancesAlongRuns = Arrays.copyOf(distancesAlongRuns, newCapacity);
+    if (grid != null)
+      grid.ensureCapacity(newCapacity);
+  }
+
+  /**
+   * Get the run of the path that a segment is on
+   * 
+   * @param index
+   * @return run
+   */
+  private int runOf(int index) {
+    if (index == 0 || movement == Movement.FOLLOW)
+      return runs[index];
+    return path.find(distanceBehindHead(index), runs[0]);
+  }
+
+  /**
+   * Get the distance of a segment along the run that it is on
+   * 
+   * @param index
+   * @return distance
+   */
+  private double distanceAlongRun(int index) {
+    if (index == 0)
+      return path.getDistance(runs[0]);
+    if (movement == Movement.FOLLOW)
+      return distancesAlongRuns[index];
+    return distanceBehindHead(index) - path.getStartDistance(runOf(index));
+  }
+
+  /**
+   * Get how far the head had gone in total when it was where a segment should
+   * be
+   * 
+   * @param index
+   * @return distance
+   */
+  private double distanceBehindHead(int index) {
+    return path.getTotalDistance() - index * SEGMENT_SPACING;
+  }
+
+  /**
+   * Puts a segment at its distance behind the head along the path
+   * 
+   * @param index
+   * @param latest -- the segment is known to be on this run or an older one
+   * @return the run that the segment is on
+   */
+  private int placeAlongPath(int index, int latest) {
+    double distance = distanceBehindHead(index);
+    int run = path.find(distance, latest);
+    double along = distance - path.getStartDistance(run);
+    double angle = path.getAngle(run);
+    xs[index] = schema.wrapX(path.getStartX(run) + Math.cos(angle) * along);
+    ys[index] = schema.wrapY(path.getStartY(run) - Math.sin(angle) * along);
+    return run;
+  }
+
+  /**
+   * Move a body segment recursively by distance. Assumes that all previous
+   * segments have been moved already.
+   * 
+   * @param index
+   * @param distance
+   */
+  private void moveRecursive(int index, double distance) {
+    int run = runs[index];
+    double usedDistance;
+    int newRun;
+    if (distancesAlongRuns[index] + distance < path.getDistance(run)) {
+      usedDistance = distance;
+      newRun = run;
+      distancesAlongRuns[index] += distance;
+    } else {
+      usedDistance = path.getDistance(run) - distancesAlongRuns[index];
+      newRun = run + 1;
+      distancesAlongRuns[index] = 0;
+    }
+
+    double angle = path.getAngle(run);
+    xs[index] = schema.wrapX(xs[index] + Math.cos(angle) * distance);
+    ys[index] = schema.wrapY(ys[index] - Math.sin(angle) * distance);
+    runs[index] = newRun;
+
+    double distanceLeft = distance - usedDistance;
+    if (distanceLeft > 0)
+      moveRecursive(index, distanceLeft);
   }
 
   /**
@@ -79,25 +490,21 @@ public class Snake implements Iterable<Snake.Segment> {
    */
   private class SegmentIterator implements Iterator<Segment> {
 
-    // The segment that this iterator is currently on
-    Segment current;
+    // The index of the segment that this iterator is currently on
+    private int current = 0;
 
-    /**
-     * Constructor, pretty basic
-     * 
-     * @param start
-     */
-    public SegmentIterator(Segment start) {
-      current = start;
-    }
+    // The view handed out for body segments
+    private BodySegment body = new BodySegment();
 
     /**
      * Advances to the next segment
      */
     public Segment next() {
-      Segment toReturn = current;
-      current = current.next();
-      return toReturn;
+      int index = current++;
+      if (index == 0)
+        return head;
+      body.index = index;
+      return body;
     }
 
     /**
@@ -106,7 +513,7 @@ public class Snake implements Iterable<Snake.Segment> {
      * @return whether there is a next segment
      */
     public boolean hasNext() {
-      return current != null;
+      return current < length;
     }
 
     /**
@@ -118,24 +525,23 @@ public class Snake implements Iterable<Snake.Segment> {
   }
 
   /**
-   * A simple abstact class to represent a snake segment
+   * A simple abstact class to represent a snake segment. A segment is just a
+   * view onto one index of the snake's arrays.
    * 
    * @author Jim
    */
   public abstract class Segment extends Circle {
 
-    // Coordinates
-    protected Coordinates coordinates;
+    // The index of the segment being viewed
+    protected int index;
 
-    // The last Waypoint that the segment left from
-    protected Waypoint waypoint;
-
-    // The next and previous segments of the snake
-    protected BodySegment next;
-    protected Segment prev;
+    // Coordinates, refreshed from the snake's arrays whenever they're asked for
+    private Coordinates coordinates = new Coordinates(schema, 0, 0);
 
     @Override
     public Coordinates getCoordinates() {
+      coordinates.setX(xs[index]);
+      coordinates.setY(ys[index]);
       return coordinates;
     }
 
@@ -145,42 +551,29 @@ public class Snake implements Iterable<Snake.Segment> {
     }
 
     /**
-     * Get the next segment
+     * Getter for index
      * 
-     * @return the next segment
+     * @return the position of this segment in the snake (0 is the head)
      */
-    public BodySegment next() {
-      return next;
+    public int getIndex() {
+      return index;
     }
 
     /**
-     * Get the prev segment
+     * Get the direction that this segment is moving in
      * 
-     * @return the prev segment
+     * @return angle
      */
-    public Segment prev() {
-      return prev;
+    public double getAngle() {
+      return path.getAngle(runOf(index));
     }
 
     /**
-     * Getter for waypoint
-     * 
-     * @return waypoint
+     * Get the distance along the run of the path that this segment is on
      */
-    public Waypoint getWaypoint() {
-      return waypoint;
+    double getDistanceAlongRun() {
+      return distanceAlongRun(index);
     }
-
-    /**
-     * Move this segment. Assumes that all previous segments have been moved
-     * already.
-     */
-    abstract void move();
-
-    /**
-     * Get the distance from the last waypoint that this segment left
-     */
-    abstract double getDistanceFromWaypoint();
   }
 
   /**
@@ -192,13 +585,9 @@ public class Snake implements Iterable<Snake.Segment> {
 
     /**
      * Constructor, pretty basic
-     * 
-     * @param coordinates
-     * @param angle
      */
-    private Head(Coordinates coordinates, double angle) {
-      this.coordinates = coordinates;
-      this.waypoint = new Waypoint(angle);
+    private Head() {
+      this.index = 0;
     }
 
     /**
@@ -207,22 +596,24 @@ public class Snake implements Iterable<Snake.Segment> {
      * @param angle
      */
     public void rotate(double angle) {
-      double newAngle = waypoint.getAngle() + angle;
-      Waypoint newWaypoint = new Waypoint(newAngle);
-      waypoint.setNext(newWaypoint);
-      waypoint = newWaypoint;
-    }
-
-    @Override
-    public void move() {
-      coordinates.setX((coordinates.getX() + (Math.cos(waypoint.getAngle()) * speed)));
-      coordinates.setY((coordinates.getY() - (Math.sin(waypoint.getAngle()) * speed)));
-      waypoint.addDistance(speed);
+      path.add(path.getAngle(runs[0]) + angle, xs[0], ys[0]);
+      runs[0] = path.getNewest();
     }
 
-    @Override
-    public double getDistanceFromWaypoint() {
-      return waypoint.getDistance();
+    /**
+     * Move
+     * 
+     * @param distance
+     */
+    void move(double distance) {
+      double angle = path.getAngle(runs[0]);
+      moveX = xs[0];
+      moveY = ys[0];
+      moveDX = Math.cos(angle) * distance;
+      moveDY = -Math.sin(angle) * distance;
+      xs[0] = schema.wrapX(xs[0] + moveDX);
+      ys[0] = schema.wrapY(ys[0] + moveDY);
+      path.addDistance(distance);
     }
   }
 
@@ -232,64 +623,5 @@ public class Snake implements Iterable<Snake.Segment> {
    * @author Jim
    */
   class BodySegment extends Segment {
-
-    // Distance from the last waypoint that this body
-    // segment left from
-    private double distanceFromWaypoint;
-
-    /**
-     * Constructor. Builds a body segment right behind the tail of the snake.
-     */
-    public BodySegment() {
-      double angleFromTail = tail.waypoint.getAngle() + Math.PI;
-      double x = tail.coordinates.getX() + Math.cos(angleFromTail) * SEGMENT_SPACING;
-      double y = tail.coordinates.getY() - Math.sin(angleFromTail) * SEGMENT_SPACING;
-      this.coordinates = new Coordinates(level.getSchema(), x, y);
-      waypoint = tail.waypoint;
-      distanceFromWaypoint = tail.getDistanceFromWaypoint() - SEGMENT_SPACING;
-      tail.next = this;
-      this.prev = tail;
-      tail = this;
-    }
-
-    /**
-     * Move
-     */
-    @Override
-    void move() {
-      moveRecursive(speed);
-    }
-
-    /**
-     * Move recursively by distance
-     * 
-     * @param distance
-     */
-    private void moveRecursive(double distance) {
-      double usedDistance;
-      Waypoint newWaypoint;
-      if (distanceFromWaypoint + distance < waypoint.getDistance()) {
-        usedDistance = distance;
-        newWaypoint = waypoint;
-        distanceFromWaypoint += distance;
-      } else {
-        usedDistance = waypoint.getDistance() - distanceFromWaypoint;
-        newWaypoint = waypoint.next();
-        distanceFromWaypoint = 0;
-      }
-
-      coordinates.setX((coordinates.getX() + Math.cos(waypoint.getAngle()) * distance));
-      coordinates.setY((coordinates.getY() - Math.sin(waypoint.getAngle()) * distance));
-      waypoint = newWaypoint;
-
-      double distanceLeft = distance - usedDistance;
-      if (distanceLeft > 0)
-        moveRecursive(distanceLeft);
-    }
-
-    @Override
-    double getDistanceFromWaypoint() {
-      return distanceFromWaypoint;
-    }
   }
 }
@@ -0,0 +1,286 @@
+package back;
+
+/**
+ * This class is a picture of a level at the end of one tick: where the snake
+ * and the food are, the obstacles, and how the game is going. It never changes
+ * once it has been made, so the simulation can hand one to the renderers on
+ * another thread without any locking, and the renderers never see a level that
+ * is halfway through being updated.
+ * 
+ * It also remembers where the snake was at the end of the tick before, and
+ * when it was taken, so that a renderer drawing faster than the game ticks can
+ * draw the snake part of the way between the two ticks instead of jumping a
+ * whole tick at a time.
+ */
+public class Snapshot {
+
+  // Level description
+  private LevelSchema schema;
+
+  // The obstacles, as they were indexed for this tick
+  private ObstacleIndex obstacles;
+
+  // The number of ticks simulated before this picture was taken
+  private long tick;
+
+  // State of the level
+  private Level.State state;
+
+  // The number of food items left
+  private int foodLeft;
+
+  // Position of each segment of the snake (index 0 is the head)
+  private double[] snakeXs;
+  private double[] snakeYs;
+
+  // The direction the head is moving in
+  private double headAngle;
+
+  // The same for the tick before (shared with the snapshot of that tick)
+  private double[] previousSnakeXs;
+  private double[] previousSnakeYs;
+  private double previousHeadAngle;
+
+  // When this picture was taken (System.nanoTime()), and how long a tick lasts
+  // (0 if ticks aren't on a timer)
+  private long takenNanos;
+  private long tickNanos;
+
+  // Position of the food, if there is any
+  private boolean hasFood;
+  private double foodX;
+  private double foodY;
+
+  /**
+   * Constructor, for a picture that isn't part of a running game
+   * 
+   * @param level
+   * @param tick  -- the number of ticks simulated so far
+   */
+  public Snapshot(Level level, long tick) {
+    this(level, tick, null, 0);
+  }
+
+  /**
+   * Constructor, copies everything that is needed out of a level
+   * 
+   * @param level
+   * @param tick      -- the number of ticks simulated so far
+   * @param previous  -- the snapshot of the tick before (or null)
+   * @param tickNanos -- how long a tick lasts (or 0)
+   */
+  public Snapshot(Level level, long tick, Snapshot previous, long tickNanos) {
+    Snake snake = level.getSnake();
+    this.schema = level.getSchema();
+    this.obstacles = schema.getObstacleIndex();
+    this.tick = tick;
+    this.state = level.getState();
+    this.foodLeft = level.getFoodLeft();
+    this.snakeXs = new double[snake.getLength()];
+    this.snakeYs = new double[snake.getLength()];
+    for (int i = 0; i < snake.getLength(); i++) {
+      snakeXs[i] = snake.getX(i);
+      snakeYs[i] = snake.getY(i);
+    }
+    this.headAngle = snake.getHead().getAngle();
+    this.previousSnakeXs = previous != null ? previous.snakeXs : snakeXs;
+    this.previousSnakeYs = previous != null ? previous.snakeYs : snakeYs;
+    this.previousHeadAngle = previous != null ? previous.headAngle : headAngle;
+    this.takenNanos = System.nanoTime();
+    this.tickNanos = tickNanos;
+    this.hasFood = level.getFood() != null;
+    if (hasFood) {
+      this.foodX = level.getFood().getCoordinates().getX();
+      this.foodY = level.getFood().getCoordinates().getY();
+    }
+  }
+
+  /**
+   * Getter for schema
+   * 
+   * @return schema
+   */
+  public LevelSchema getSchema() {
+    return schema;
+  }
+
+  /**
+   * Getter for obstacles
+   * 
+   * @return the obstacles, split up so that none of them hang over the edges
+   */
+  public ObstacleIndex getObstacles() {
+    return obstacles;
+  }
+
+  /**
+   * Getter for tick
+   * 
+   * @return the number of ticks simulated before this picture was taken
+   */
+  public long getTick() {
+    return tick;
+  }
+
+  /**
+   * Getter for state
+   * 
+   * @return state
+   */
+  public Level.State getState() {
+    return state;
+  }
+
+  /**
+   * Getter for foodLeft
+   * 
+   * @return foodLeft
+   */
+  public int getFoodLeft() {
+    return foodLeft;
+  }
+
+  /**
+   * @return the number of segments in the snake, including the head
+   */
+  public int getSnakeLength() {
+    return snakeXs.length;
+  }
+
+  /**
+   * @param index (0 is the head)
+   * @return x coordinate of a segment
+   */
+  public double getSnakeX(int index) {
+    return snakeXs[index];
+  }
+
+  /**
+   * @param index (0 is the head)
+   * @return y coordinate of a segment
+   */
+  public double getSnakeY(int index) {
+    return snakeYs[index];
+  }
+
+  /**
+   * Getter for headAngle
+   * 
+   * @return the direction the head is moving in
+   */
+  public double getHeadAngle() {
+    return headAngle;
+  }
+
+  /**
+   * Works out how far it is from the tick before this one to this one at a
+   * given time, for passing to the methods below. It gets to 1 one tick after
+   * this picture was taken, which is about when the next one should arrive.
+   * 
+   * @param nanoTime -- from System.nanoTime()
+   * @return between 0 (the tick before) and 1 (this tick)
+   */
+  public double getFraction(long nanoTime) {
+    if (tickNanos <= 0)
+      return 1;
+    return Math.max(0, Math.min(1, (nanoTime - takenNanos) / (double) tickNanos));
+  }
+
+  /**
+   * @param index    (0 is the head)
+   * @param fraction -- from getFraction()
+   * @return x coordinate of a segment, part of the way between the tick before
+   *         and this one
+   */
+  public double getSnakeX(int index, double fraction) {
+    if (index >= previousSnakeXs.length)
+      return snakeXs[index];
+    return between(previousSnakeXs[index], snakeXs[index], fraction, schema.getWidth());
+  }
+
+  /**
+   * @param index    (0 is the head)
+   * @param fraction -- from getFraction()
+   * @return y coordinate of a segment, part of the way between the tick before
+   *         and this one
+   */
+  public double getSnakeY(int index, double fraction) {
+    if (index >= previousSnakeYs.length)
+      return snakeYs[index];
+    return between(previousSnakeYs[index], snakeYs[index], fraction, schema.getHeight());
+  }
+
+  /**
+   * @param fraction -- from getFraction()
+   * @return the direction the head is moving in, part of the way between the
+   *         tick before and this one
+   */
+  public double getHeadAngle(double fraction) {
+    return previousHeadAngle + (headAngle - previousHeadAngle) * fraction;
+  }
+
+  /**
+   * Goes part of the way from one coordinate to another, the short way around
+   * the level
+   * 
+   * @param from
+   * @param to
+   * @param fraction
+   * @param size     -- the width or height of the level
+   * @return the coordinate in between
+   */
+  private static double between(double from, double to, double fraction, double size) {
+    double delta = to - from;
+    if (delta > size / 2)
+      delta -= size;
+    else if (delta < -size / 2)
+      delta += size;
+    double position = from + delta * fraction;
+    if (position < 0)
+      position += size;
+    else if (position >= size)
+      position -= size;
+    return position;
+  }
+
+  /**
+   * @return the radius of each snake segment
+   */
+  public double getSegmentRadius() {
+    return Snake.SEGMENT_RADIUS;
+  }
+
+  /**
+   * Getter for hasFood
+   * 
+   * @return whether there is any food
+   */
+  public boolean hasFood() {
+    return hasFood;
+  }
+
+  /**
+   * Getter for foodX
+   * 
+   * @return x coordinate of the food
+   */
+  public double getFoodX() {
+    return foodX;
+  }
+
+  /**
+   * Getter for foodY
+   * 
+   * @return y coordinate of the food
+   */
+  public double getFoodY() {
+    return foodY;
+  }
+
+  /**
+   * @return the radius of the food
+   */
+  public double getFoodRadius() {
+    return Food.RADIUS;
+  }
+}
@@ -0,0 +1,26 @@
+package back;
+
+/**
+ * This interface represents something that steers the snake. Once per tick of
+ * the game it is asked how far the head of the snake should rotate.
+ */
+public interface TurnInput {
+
+  /**
+   * Get the amount that the head of the snake should rotate on the next tick
+   * 
+   * @param level -- the level that is about to be updated
+   * @return angle to rotate by (0 to keep going straight)
+   */
+  double nextAngle(Level level);
+
+  /**
+   * Whether this input has run out, like a recording that has been played all
+   * the way through. A simulation stops once its input is exhausted.
+   * 
+   * @return whether there is no more input
+   */
+  default boolean isExhausted() {
+    return false;
+  }
+}
@@ -7,6 +7,13 @@ import com.jogamp.opengl.GLAutoDrawable;
 import com.jogamp.opengl.awt.GLCanvas;
 import com.jogamp.opengl.GLEventListener;
 
+import back.Metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
 /**
  * This class represents a top-level display that is put inside of a JFrame
  * window. Each display has many SubDisplays which display the important
@@ -25,18 +32,52 @@ public abstract class Display extends GLCanvas implements GLEventListener {
   }
 
   /**
-   * Draws this display.
+   * Draws this display, timing the frame and each SubDisplay if there is
+   * somewhere to record it.
    */
   @Override
   public final void display(GLAutoDrawable drawable) {
+    Metrics metrics = getMetrics();
+    long frameStart = System.nanoTime();
+    if (metrics != null)
+      metrics.frameStarted(frameStart);
+
+    prepareFrame();
+
     GL gl = drawable.getGL();
     gl.glClear(GL.GL_COLOR_BUFFER_BIT | GL.GL_DEPTH_BUFFER_BIT);
     gl.glClearColor(0f, 0f, 0f, 0f);
 
     for (SubDisplay sD : getSubDisplays()) {
+      RenderEvent event = new RenderEvent();
+      event.begin();
+      long start = System.nanoTime();
       sD.viewPort(drawable);
       sD.render(drawable);
+      event.end();
+      if (event.shouldCommit()) {
+        event.display = getClass().getSimpleName();
+        event.subDisplay = sD.getClass().getSimpleName();
+        event.commit();
+      }
+      if (metrics != null)
+        metrics.getRenderTime(sD.getClass().getSimpleName()).record(System.nanoTime() - start);
     }
+
+    finishFrame();
+
+    if (metrics != null)
+      metrics.getFrameTime().record(System.nanoTime() - frameStart);
+  }
+
+  /**
+   * Where to record how long frames take to draw. Subclasses can override this
+   * to turn the timing on.
+   * 
+   * @return metrics, or null to not record anything
+   */
+  protected Metrics getMetrics() {
+    return null;
   }
 
   /**
@@ -47,6 +88,21 @@ public abstract class Display extends GLCanvas implements GLEventListener {
    */
   protected abstract List<SubDisplay> getSubDisplays();
 
+  /**
+   * Called once at the start of drawing each frame, before any of the
+   * SubDisplays are drawn. Subclasses can override this to work out anything
+   * that all of the SubDisplays should agree on for the frame.
+   */
+  protected void prepareFrame() {
+  }
+
+  /**
+   * Called once at the end of drawing each frame, after all of the SubDisplays
+   * have been drawn
+   */
+  protected void finishFrame() {
+  }
+
   @Override
   public void reshape(GLAutoDrawable drawable, int x, int y, int w, int h) {
     display(drawable);
@@ -56,6 +112,20 @@ public abstract class Display extends GLCanvas implements GLEventListener {
   public void init(GLAutoDrawable drawable) {
   }
 
+  /**
+   * Flight recorder event for drawing one SubDisplay
+   */
+  @Name("front.Render")
+  @Label("Render")
+  @Category({ "Snake", "Rendering" })
+  static class RenderEvent extends Event {
+    @Label("Display")
+    String display;
+
+    @Label("SubDisplay")
+    String subDisplay;
+  }
+
   /**
    * This class represents a SubDisplay that shows some graphics in a rectangular
    * region of a display.
@@ -4,18 +4,26 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.util.LinkedList;
 import java.util.List;
 
 import com.jogamp.opengl.GL;
 import com.jogamp.opengl.GL2;
 import com.jogamp.opengl.fixedfunc.GLMatrixFunc;
+import com.jogamp.opengl.util.Animator;
 
-import back.Circle;
+import back.InputQueue;
 import back.Level;
 import back.LevelSchema;
 import back.LevelSchemaLoader;
-import back.Snake;
+import back.Metrics;
+import back.ReplayRecorder;
+import back.Simulation;
+import back.Snapshot;
+import back.TurnInput;
 
 import com.jogamp.opengl.GLAutoDrawable;
 
@@ -23,7 +31,11 @@ import javax.swing.Timer;
 import javax.vecmath.Color3f;
 
 /**
- * This class represents the display for the main game
+ * This class represents the display for the main game. The game runs on its
+ * own thread at a fixed rate, and this display draws the latest snapshot of it
+ * as often as the monitor refreshes. Frames that come between two ticks draw
+ * the snake part of the way between them, so it moves smoothly no matter how
+ * the tick rate and the refresh rate line up.
  * 
  * @author Jim
  */
@@ -31,26 +43,66 @@ public class GameDisplay extends Display implements KeyListener, ActionListener
 
   final static double LINE_SPACING = 6.0;
 
+  // System property naming a directory to save a recording of every game into
+  final static String RECORDING_DIRECTORY_PROPERTY = "snake.recordingDirectory";
+
+  // System property that shows the timing overlay from the start (F3 toggles it)
+  final static String METRICS_OVERLAY_PROPERTY = "snake.metricsOverlay";
+
   // The window that this GameDisplay is inside
   private Window window;
 
   // The available level schemas that were loaded at the beginning of the program
   private List<LevelSchema> levelSchemas;
 
-  // The level being played
-  private Level level;
+  // Queues up this display's keys for the simulation
+  private InputQueue input = new InputQueue();
+
+  // Tick and frame timings
+  private Metrics metrics = new Metrics();
+
+  // Draws the 2D view (made once there is a GL context to make it in)
+  private TwoDRenderer twoDRenderer;
+
+  // Whether the timing overlay is showing
+  private volatile boolean showMetrics = Boolean.getBoolean(METRICS_OVERLAY_PROPERTY);
+
+  // Steps the level, using this display's keys as input
+  private Simulation simulation;
+
+  // The thread that the simulation runs on (volatile, since the shutdown hook
+  // looks at it too)
+  private volatile Thread simulationThread;
 
-  // Animates the game
-  Timer animation = new Timer(20, this);;
+  // The snapshot being drawn this frame
+  private volatile Snapshot frame;
 
-  // Number of frames before returning to the title screen
+  // How far between the tick before the snapshot and the snapshot this frame
+  // is drawn
+  private double fraction = 1;
+
+  // Records the game, if recording is turned on
+  private ReplayRecorder recorder;
+
+  // Finishes the recording if the program exits in the middle of the game (like
+  // when the window is closed), or null if there's no recording
+  private Thread recordingShutdownHook;
+
+  // Draws frames, in step with the monitor
+  private Animator animator = new Animator(this);
+
+  // Counts down to returning to the title screen after a game over
+  Timer endGameCountdown = new Timer(20, this);
+
+  // Number of countdown timer ticks before returning to the title screen
   // when you get a game over
   private int END_GAME_TIMER_MAX = 100;
 
   // Counts down time until returning to the title screen
   private int endGameTimer = END_GAME_TIMER_MAX;
 
-  // Keep track of which left/right keys are down
+  // Keep track of which left/right keys are down, so that key repeats aren't
+  // queued up as more presses
   private boolean leftKeyDown = false;
   private boolean rightKeyDown = false;
 
@@ -66,9 +118,43 @@ public class GameDisplay extends Display implements KeyListener, ActionListener
     super();
     this.window = window;
     this.levelSchemas = levelSchemas;
-    this.level = level;
+    this.simulation = new Simulation(level, startRecording(level), metrics);
+    this.frame = simulation.getSnapshot();
+    input.register();
+    metrics.register();
     addKeyListener(this);
-    animation.start();
+    simulationThread = simulation.start(Simulation.DEFAULT_TICKS_PER_SECOND);
+    animator.start();
+    endGameCountdown.start();
+  }
+
+  /**
+   * Waits for the monitor to refresh before showing each frame, so that the
+   * animator draws one frame per refresh
+   */
+  @Override
+  public void init(GLAutoDrawable drawable) {
+    drawable.getGL().setSwapInterval(1);
+  }
+
+  /**
+   * Picks the snapshot to draw this frame, and how far towards it to draw the
+   * snake, so that all of the SubDisplays draw the same thing
+   */
+  @Override
+  protected void prepareFrame() {
+    Snapshot snapshot = simulation.getSnapshot();
+    fraction = snapshot.getFraction(System.nanoTime());
+    frame = snapshot;
+  }
+
+  /**
+   * Lets the input queue know which tick has just been drawn, for measuring
+   * input lag
+   */
+  @Override
+  protected void finishFrame() {
+    input.frameShown(frame.getTick(), System.nanoTime());
   }
 
   @Override
@@ -78,28 +164,46 @@ public class GameDisplay extends Display implements KeyListener, ActionListener
     subDisplays.add(new ThreeDView());
     subDisplays.add(new StateDisplay());
     subDisplays.add(new FoodLeftDisplay());
+    if (showMetrics)
+      subDisplays.add(new MetricsOverlay());
     return subDisplays;
   }
 
+  @Override
+  protected Metrics getMetrics() {
+    return metrics;
+  }
+
   @Override
   public void keyPressed(KeyEvent e) {
+    long now = System.nanoTime();
     switch (e.getKeyCode()) {
     case KeyEvent.VK_LEFT:
+      if (!leftKeyDown)
+        input.press(InputQueue.Direction.LEFT, now);
       leftKeyDown = true;
       break;
     case KeyEvent.VK_RIGHT:
+      if (!rightKeyDown)
+        input.press(InputQueue.Direction.RIGHT, now);
       rightKeyDown = true;
       break;
+    case KeyEvent.VK_F3:
+      showMetrics = !showMetrics;
+      break;
     }
   }
 
   @Override
   public void keyReleased(KeyEvent e) {
+    long now = System.nanoTime();
     switch (e.getKeyCode()) {
     case KeyEvent.VK_LEFT:
+      input.release(InputQueue.Direction.LEFT, now);
       leftKeyDown = false;
       break;
     case KeyEvent.VK_RIGHT:
+      input.release(InputQueue.Direction.RIGHT, now);
       rightKeyDown = false;
       break;
     }
@@ -110,31 +214,89 @@ public class GameDisplay extends Display implements KeyListener, ActionListener
   }
 
   /**
-   * Updates the game for each frame of animation
+   * Returns to the title screen a little while after the game is over
    */
   @Override
   public void actionPerformed(ActionEvent e) {
-    if (level.getState().gameOver()) {
+    if (simulation.getSnapshot().getState().gameOver()) {
       endGameTimer--;
       if (endGameTimer <= 0)
         returnToTitleScreen();
-    } else {
-      double angle = 0;
-      if (rightKeyDown)
-        angle -= (Math.PI * 2 * 5) / 360.0;
-      if (leftKeyDown)
-        angle += (Math.PI * 2 * 5) / 360.0;
-      level.update(angle);
-      display();
     }
   }
 
+  /**
+   * Starts recording the game into the recording directory, if there is one.
+   * If the recording can't be started, the game goes on without it.
+   * 
+   * @param level
+   * @return the input to drive the simulation with
+   */
+  private TurnInput startRecording(Level level) {
+    String directory = System.getProperty(RECORDING_DIRECTORY_PROPERTY);
+    if (directory == null)
+      return input;
+    File file = new File(directory, level.getSchema().getId() + "-" + System.currentTimeMillis() + ".replay");
+    try {
+      recorder = new ReplayRecorder(new FileOutputStream(file), level, input);
+      recordingShutdownHook = new Thread(this::stopSimulation, "Finish recording");
+      Runtime.getRuntime().addShutdownHook(recordingShutdownHook);
+      return recorder;
+    } catch (IOException e) {
+      System.err.println("Couldn't record to " + file + ": " + e);
+      return input;
+    }
+  }
+
+  /**
+   * Finishes the recording, if there is one
+   */
+  private void stopRecording() {
+    if (recorder == null)
+      return;
+    try {
+      recorder.close();
+    } catch (IOException e) {
+      System.err.println("Couldn't finish recording: " + e);
+    }
+    recorder = null;
+    if (Thread.currentThread() != recordingShutdownHook) {
+      try {
+        Runtime.getRuntime().removeShutdownHook(recordingShutdownHook);
+      } catch (IllegalStateException e) {
+        // Already shutting down, and the hook will find nothing left to do
+      }
+    }
+  }
+
+  /**
+   * Stops the simulation and finishes the recording. The recorder is used on
+   * the simulation thread, so this waits for that to finish first. It's called
+   * when going back to the title screen, and from the shutdown hook if the
+   * program exits first, so it only does anything the first time.
+   */
+  private synchronized void stopSimulation() {
+    simulation.stop();
+    if (simulationThread != null) {
+      try {
+        simulationThread.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    stopRecording();
+  }
+
   /**
    * Switches the game back to the title screen after a game-over
    */
   private void returnToTitleScreen() {
-    animation.stop();
-    animation.removeActionListener(this);
+    endGameCountdown.stop();
+    endGameCountdown.removeActionListener(this);
+    animator.stop();
+    stopSimulation();
+    input.unregister();
+    metrics.unregister();
     this.window.remove(this);
     TitleScreen titleScreen = new TitleScreen(window, levelSchemas);
     this.window.setVisible(true);
@@ -142,8 +304,17 @@ public class GameDisplay extends Display implements KeyListener, ActionListener
     titleScreen.display();
   }
 
+  /**
+   * Frees the 2D view's buffers and the 3D view's meshes along with the GL
+   * context
+   */
   @Override
   public void dispose(GLAutoDrawable drawable) {
+    MeshCache.release(drawable);
+    if (twoDRenderer != null) {
+      twoDRenderer.release(drawable.getGL().getGL2());
+      twoDRenderer = null;
+    }
   }
 
   /**
@@ -155,7 +326,7 @@ public class GameDisplay extends Display implements KeyListener, ActionListener
 
     @Override
     protected double getAspectRatio() {
-      return level.getSchema().getWidth() / level.getSchema().getHeight();
+      return frame.getSchema().getWidth() / frame.getSchema().getHeight();
     }
 
     @Override
@@ -186,67 +357,25 @@ public class GameDisplay extends Display implements KeyListener, ActionListener
     @Override
     void render(GLAutoDrawable drawable) {
       GL2 gl = drawable.getGL().getGL2();
+      Snapshot snapshot = frame;
+      LevelSchema schema = snapshot.getSchema();
 
       gl.glDisable(GL.GL_DEPTH_TEST);
 
       gl.glMatrixMode(GLMatrixFunc.GL_PROJECTION);
       gl.glLoadIdentity();
-      gl.glOrtho(0, level.getSchema().getWidth(), level.getSchema().getHeight(), 0, 0, 1);
+      gl.glOrtho(0, schema.getWidth(), schema.getHeight(), 0, 0, 1);
 
       gl.glMatrixMode(GLMatrixFunc.GL_MODELVIEW);
       gl.glLoadIdentity();
 
-      // Draw a grid of green lines to represent the plane
-      gl.glColor3d(0, 1, 0);
-      gl.glBegin(GL.GL_LINES);
-      for (int i = 0; i < level.getSchema().getWidth(); i += LINE_SPACING) {
-        gl.glVertex2d(i, 0);
-        gl.glVertex2d(i, level.getSchema().getHeight());
-      }
-      for (int i = 0; i < level.getSchema().getHeight(); i += LINE_SPACING) {
-        gl.glVertex2d(0, i);
-        gl.glVertex2d(level.getSchema().getWidth(), i);
-      }
-      gl.glEnd();
-
-      // Draw each snake segment
-      gl.glColor3d(1, 0, 0);
-      for (Snake.Segment s : level.getSnake())
-        drawCircle(gl, s);
-
-      // Draw the food
-      if (level.getFood() != null) {
-        gl.glColor3d(1, 0, 1);
-        drawCircle(gl, level.getFood());
-      }
-
-      // Draw the obstacles
-      gl.glColor3d(.3, .3, 1);
-      for (LevelSchema.Obstacle o : level.getSchema().getObstacles()) {
-        for (LevelSchema.Obstacle _o : o.split()) {
-          gl.glBegin(GL2.GL_QUADS);
-          gl.glVertex2d(_o.getLeftSideX(), _o.getTopSideY());
-          gl.glVertex2d(_o.getLeftSideX(), _o.getBottomSideY());
-          gl.glVertex2d(_o.getRightSideX(), _o.getBottomSideY());
-          gl.glVertex2d(_o.getRightSideX(), _o.getTopSideY());
-          gl.glEnd();
-        }
+      // The grid and obstacles are uploaded once for the level's schema
+      if (twoDRenderer == null || twoDRenderer.getSchema() != schema) {
+        if (twoDRenderer != null)
+          twoDRenderer.release(gl);
+        twoDRenderer = new TwoDRenderer(gl, schema);
       }
-    }
-
-    /**
-     * Draws a circle
-     * 
-     * @param gl
-     * @param c
-     */
-    private void drawCircle(GL2 gl, Circle c) {
-      gl.glBegin(GL.GL_TRIANGLE_FAN);
-      gl.glVertex2d(c.getCoordinates().getX(), c.getCoordinates().getY());
-      for (int angle = 0; angle <= 360; angle += 5)
-        gl.glVertex2d(c.getCoordinates().getX() + Math.sin((angle / 360.0) * 2 * Math.PI) * c.getRadius(),
-            c.getCoordinates().getY() + Math.cos((angle / 360.0) * 2 * Math.PI) * c.getRadius());
-      gl.glEnd();
+      twoDRenderer.render(gl, snapshot, fraction);
     }
   }
 
@@ -289,7 +418,7 @@ public class GameDisplay extends Display implements KeyListener, ActionListener
 
     @Override
     void render(GLAutoDrawable drawable) {
-      new ThreeDDrawingStrategyGame().render(drawable, level);
+      new ThreeDDrawingStrategyGame().render(drawable, frame, fraction);
     }
   }
 
@@ -310,7 +439,7 @@ public class GameDisplay extends Display implements KeyListener, ActionListener
 
     @Override
     protected double getAspectRatio() {
-      switch (level.getState()) {
+      switch (frame.getState()) {
       case WON:
         return wonStrategy.orthoWidth() / wonStrategy.orthoHeight();
       case LOST:
@@ -347,7 +476,7 @@ public class GameDisplay extends Display implements KeyListener, ActionListener
 
     @Override
     public void render(GLAutoDrawable drawable) {
-      switch (level.getState()) {
+      switch (frame.getState()) {
       case WON:
         wonStrategy.render(drawable);
         break;
@@ -368,7 +497,7 @@ public class GameDisplay extends Display implements KeyListener, ActionListener
     // Text rendering strategy to delegate to
     private TextRenderingStrategy getTextRenderingStrategy() {
       return new TextRenderingStrategy(
-          new TextRenderingStrategy.Line("Food left: " + level.getFoodLeft(), 1, new Color3f(1, 1, 1)));
+          new TextRenderingStrategy.Line("Food left: " + frame.getFoodLeft(), 1, new Color3f(1, 1, 1)));
     }
 
     @Override
@@ -406,4 +535,67 @@ public class GameDisplay extends Display implements KeyListener, ActionListener
       getTextRenderingStrategy().render(drawable);
     }
   }
+
+  /**
+   * SubDisplay for how long ticks and frames are taking, drawn over the top
+   * left of the game.
+   */
+  public class MetricsOverlay extends SubDisplay {
+
+    // Text rendering strategy to delegate to, made fresh for each frame
+    private TextRenderingStrategy textRenderingStrategy;
+
+    /**
+     * Constructor, puts the latest timings into text
+     */
+    public MetricsOverlay() {
+      List<TextRenderingStrategy.Line> lines = new LinkedList<TextRenderingStrategy.Line>();
+      Color3f color = new Color3f(1, 1, 0);
+      lines.add(new TextRenderingStrategy.Line(
+          String.format("Tick: %.2f ms (99%%: %.2f ms), %d bytes allocated", metrics.getTickTime().getMean() / 1e6,
+              metrics.getTickTime().getP99() / 1e6, metrics.getTickAllocatedBytes().getP50()),
+          1, color));
+      lines.add(new TextRenderingStrategy.Line(String.format("Frame: %.1f fps, %.2f ms (99%%: %.2f ms)",
+          metrics.getFramesPerSecond(), metrics.getFrameTime().getMean() / 1e6,
+          metrics.getFrameTime().getP99() / 1e6), 1, color));
+      lines.add(new TextRenderingStrategy.Line(String.format("Input: %.1f ms to tick, %.1f ms to frame",
+          input.getMeanTickLatency(), input.getMeanFrameLatency()), 1, color));
+      textRenderingStrategy = new TextRenderingStrategy(lines);
+    }
+
+    @Override
+    protected double getAspectRatio() {
+      return textRenderingStrategy.orthoWidth() / textRenderingStrategy.orthoHeight();
+    }
+
+    @Override
+    protected double getH() {
+      return .12;
+    }
+
+    @Override
+    protected double getPadding() {
+      return PADDING;
+    }
+
+    @Override
+    protected double getW() {
+      return .4;
+    }
+
+    @Override
+    protected double getX() {
+      return 0;
+    }
+
+    @Override
+    protected double getY() {
+      return 0;
+    }
+
+    @Override
+    public void render(GLAutoDrawable drawable) {
+      textRenderingStrategy.render(drawable);
+    }
+  }
 }
@@ -0,0 +1,244 @@
+package front;
+
+import com.jogamp.opengl.GL2;
+import com.jogamp.opengl.GLAutoDrawable;
+import com.jogamp.opengl.GLContext;
+import com.jogamp.opengl.GLException;
+
+import back.LevelSchema;
+
+/**
+ * This class keeps the meshes for the level that a GL context is showing, so
+ * that geometry which never changes is only worked out and uploaded once
+ * instead of every frame. There is one cache per GL context, attached to the
+ * context itself, so every ThreeDDrawingStrategy drawing into the same window
+ * shares it.
+ * 
+ * Only the meshes for one schema are kept. Asking for a different schema (like
+ * when the title screen moves on to another level) releases the old ones. The
+ * spheres for the snake and the food are the same on every level, so they are
+ * kept until the context goes away.
+ * 
+ * When the torus shader is turned on (see TorusShader), the torus and the
+ * obstacles are kept flat as well, for the shader to map.
+ */
+class MeshCache {
+
+  // The name that the cache is attached to its GL context under
+  private final static String KEY = MeshCache.class.getName();
+
+  // The schema that the meshes are for (or null if there aren't any)
+  private LevelSchema schema;
+
+  // The torus and the obstacles' wireframes (or null if they haven't been made
+  // yet)
+  private WireMesh torus;
+  private WireMesh obstacles;
+
+  // The same, but flat (or null if they haven't been made yet)
+  private WireMesh flatTorus;
+  private WireMesh flatObstacles;
+
+  // Maps flat meshes onto the torus (or null if it hasn't been made yet, or
+  // couldn't be), and whether it has been tried
+  private TorusShader torusShader;
+  private boolean torusShaderTried = false;
+
+  // Draws the snake's segments, and the sphere it draws them with (or null if
+  // they haven't been made yet)
+  private SegmentRenderer segments;
+  private WireMesh segmentSphere;
+
+  // The food's sphere (or null if it hasn't been made yet)
+  private WireMesh foodSphere;
+
+  /**
+   * Gets the cache for a drawable's GL context, making it if this is the first
+   * time
+   * 
+   * @param drawable
+   * @return cache
+   */
+  static MeshCache get(GLAutoDrawable drawable) {
+    GLContext context = drawable.getContext();
+    MeshCache cache = (MeshCache) context.getAttachedObject(KEY);
+    if (cache == null) {
+      cache = new MeshCache();
+      context.attachObject(KEY, cache);
+    }
+    return cache;
+  }
+
+  /**
+   * Releases everything in a drawable's cache, if it has one. Should be called
+   * before the GL context goes away.
+   * 
+   * @param drawable
+   */
+  static void release(GLAutoDrawable drawable) {
+    GLContext context = drawable.getContext();
+    MeshCache cache = (MeshCache) context.detachObject(KEY);
+    if (cache != null) {
+      GL2 gl = drawable.getGL().getGL2();
+      cache.release(gl);
+      if (cache.segments != null) {
+        cache.segments.release(gl);
+        cache.segmentSphere.release(gl);
+      }
+      if (cache.foodSphere != null)
+        cache.foodSphere.release(gl);
+      if (cache.torusShader != null)
+        cache.torusShader.release(gl.getGL3());
+    }
+  }
+
+  /**
+   * Gets the wireframe of the torus that a level is drawn on
+   * 
+   * @param gl
+   * @param schema
+   * @return mesh
+   */
+  WireMesh getTorus(GL2 gl, LevelSchema schema) {
+    use(gl, schema);
+    if (torus == null)
+      torus = WireMesh.torus(gl, schema, true);
+    return torus;
+  }
+
+  /**
+   * Gets the flat wireframe of the torus that a level is drawn on, for the
+   * torus shader
+   * 
+   * @param gl
+   * @param schema
+   * @return mesh
+   */
+  WireMesh getFlatTorus(GL2 gl, LevelSchema schema) {
+    use(gl, schema);
+    if (flatTorus == null)
+      flatTorus = WireMesh.torus(gl, schema, false);
+    return flatTorus;
+  }
+
+  /**
+   * Gets the wireframe of a level's obstacles
+   * 
+   * @param gl
+   * @param schema
+   * @return mesh
+   */
+  WireMesh getObstacles(GL2 gl, LevelSchema schema) {
+    use(gl, schema);
+    if (obstacles == null)
+      obstacles = WireMesh.obstacles(gl, schema, true);
+    return obstacles;
+  }
+
+  /**
+   * Gets the flat wireframe of a level's obstacles, for the torus shader
+   * 
+   * @param gl
+   * @param schema
+   * @return mesh
+   */
+  WireMesh getFlatObstacles(GL2 gl, LevelSchema schema) {
+    use(gl, schema);
+    if (flatObstacles == null)
+      flatObstacles = WireMesh.obstacles(gl, schema, false);
+    return flatObstacles;
+  }
+
+  /**
+   * Gets the torus shader, if it's turned on with the snake.torusShader system
+   * property and the context can run it (GL 3.3 and up)
+   * 
+   * @param gl
+   * @return shader (or null if the torus should be mapped on the CPU)
+   */
+  TorusShader getTorusShader(GL2 gl) {
+    if (!torusShaderTried) {
+      torusShaderTried = true;
+      if (Boolean.getBoolean(TorusShader.PROPERTY) && gl.isGL3() && WireMesh.canDrawInstanced(gl)) {
+        try {
+          torusShader = new TorusShader(gl.getGL3());
+        } catch (GLException e) {
+          System.err.println("Mapping the torus on the CPU: " + e.getMessage());
+        }
+      }
+    }
+    return torusShader;
+  }
+
+  /**
+   * Gets the renderer for the snake's segments
+   * 
+   * @param gl
+   * @return renderer
+   */
+  SegmentRenderer getSegments(GL2 gl) {
+    if (segments == null) {
+      segmentSphere = WireMesh.sphere(gl, 20, 20);
+      segments = new SegmentRenderer(gl, segmentSphere);
+    }
+    return segments;
+  }
+
+  /**
+   * Gets the sphere for the snake's segments, of radius 1
+   * 
+   * @param gl
+   * @return mesh
+   */
+  WireMesh getSegmentSphere(GL2 gl) {
+    getSegments(gl);
+    return segmentSphere;
+  }
+
+  /**
+   * Gets the sphere for the food, of radius 1
+   * 
+   * @param gl
+   * @return mesh
+   */
+  WireMesh getFoodSphere(GL2 gl) {
+    if (foodSphere == null)
+      foodSphere = WireMesh.sphere(gl, 10, 10);
+    return foodSphere;
+  }
+
+  /**
+   * Switches the cache over to a schema, releasing the meshes of the last one
+   * if it was different
+   * 
+   * @param gl
+   * @param schema
+   */
+  private void use(GL2 gl, LevelSchema schema) {
+    if (schema == this.schema)
+      return;
+    release(gl);
+    this.schema = schema;
+  }
+
+  /**
+   * Releases every mesh that belongs to the schema
+   * 
+   * @param gl
+   */
+  private void release(GL2 gl) {
+    if (torus != null)
+      torus.release(gl);
+    if (obstacles != null)
+      obstacles.release(gl);
+    if (flatTorus != null)
+      flatTorus.release(gl);
+    if (flatObstacles != null)
+      flatObstacles.release(gl);
+    torus = null;
+    obstacles = null;
+    flatTorus = null;
+    flatObstacles = null;
+    schema = null;
+  }
+}
@@ -0,0 +1,215 @@
+package front;
+
+import java.nio.FloatBuffer;
+
+import com.jogamp.common.nio.Buffers;
+import com.jogamp.opengl.GL;
+import com.jogamp.opengl.GL2;
+import com.jogamp.opengl.GL2ES3;
+import com.jogamp.opengl.GLException;
+import com.jogamp.opengl.fixedfunc.GLMatrixFunc;
+
+/**
+ * This class draws lots of wireframe spheres of the same color, like the
+ * segments of the snake. The sphere mesh is kept on the graphics card, and
+ * each frame the centers and radii are added one at a time and then drawn all
+ * together.
+ * 
+ * Where the context can do instanced drawing (GL 3.3 and up, see
+ * WireMesh.canDrawInstanced()), every sphere is drawn in one call by a small
+ * shader that moves and scales the mesh for each one. Otherwise each sphere is
+ * drawn with the fixed-function pipeline, which is a call per sphere but still
+ * doesn't rebuild the mesh.
+ * 
+ * It belongs to the GL context it was made in, and release() should be called
+ * once it isn't needed anymore.
+ */
+class SegmentRenderer {
+
+  // Moves and scales the unit sphere for each instance, using the
+  // fixed-function matrices that were set up for the rest of the scene
+  private final static String VERTEX_SHADER = String.join("\n",
+      "#version 140",
+      "uniform mat4 projection;",
+      "uniform mat4 modelView;",
+      "in vec3 position;",
+      "in vec4 instance;",
+      "void main() {",
+      "  gl_Position = projection * modelView * vec4(instance.xyz + position * instance.w, 1.0);",
+      "}");
+
+  // Draws everything in one color
+  private final static String FRAGMENT_SHADER = String.join("\n",
+      "#version 140",
+      "uniform vec3 color;",
+      "out vec4 fragColor;",
+      "void main() {",
+      "  fragColor = vec4(color, 1.0);",
+      "}");
+
+  // Attribute locations
+  private final static int POSITION = 0;
+  private final static int INSTANCE = 1;
+
+  // Floats per instance: center x, y and z, then radius
+  private final static int FLOATS_PER_INSTANCE = 4;
+
+  // The sphere that gets drawn for each instance
+  private WireMesh sphere;
+
+  // The instancing program and its uniforms (or null if the fixed-function
+  // pipeline is being used)
+  private ShaderProgram program;
+  private int projectionUniform;
+  private int modelViewUniform;
+  private int colorUniform;
+
+  // Buffer name for the instances, and how many instances it has room for
+  private int[] instanceBuffer = new int[1];
+  private int instanceCapacity = 0;
+
+  // The instances added since the last draw
+  private FloatBuffer instances = Buffers.newDirectFloatBuffer(64 * FLOATS_PER_INSTANCE);
+
+  // Scratch space for reading the fixed-function matrices
+  private float[] projection = new float[16];
+  private float[] modelView = new float[16];
+
+  /**
+   * Constructor, tries to set up instanced drawing and falls back to the
+   * fixed-function pipeline if it can't
+   * 
+   * @param gl
+   * @param sphere -- a sphere of radius 1 around the origin
+   */
+  SegmentRenderer(GL2 gl, WireMesh sphere) {
+    this.sphere = sphere;
+    if (!WireMesh.canDrawInstanced(gl))
+      return;
+    GL2ES3 gl3 = gl.getGL2ES3();
+    try {
+      program = new ShaderProgram(gl3, VERTEX_SHADER, FRAGMENT_SHADER, "position", "instance");
+    } catch (GLException e) {
+      System.err.println("Drawing segments one at a time: " + e.getMessage());
+      return;
+    }
+    projectionUniform = program.getUniform(gl3, "projection");
+    modelViewUniform = program.getUniform(gl3, "modelView");
+    colorUniform = program.getUniform(gl3, "color");
+    gl3.glGenBuffers(1, instanceBuffer, 0);
+  }
+
+  /**
+   * Adds a sphere to be drawn by the next call to draw()
+   * 
+   * @param x
+   * @param y
+   * @param z
+   * @param radius
+   */
+  void add(double x, double y, double z, double radius) {
+    if (instances.remaining() < FLOATS_PER_INSTANCE) {
+      FloatBuffer bigger = Buffers.newDirectFloatBuffer(instances.capacity() * 2);
+      instances.flip();
+      bigger.put(instances);
+      instances = bigger;
+    }
+    instances.put((float) x).put((float) y).put((float) z).put((float) radius);
+  }
+
+  /**
+   * Draws every sphere that has been added, and forgets them
+   * 
+   * @param gl
+   * @param red
+   * @param green
+   * @param blue
+   */
+  void draw(GL2 gl, float red, float green, float blue) {
+    instances.flip();
+    int count = instances.remaining() / FLOATS_PER_INSTANCE;
+    if (count > 0) {
+      if (program != null)
+        drawInstanced(gl, count, red, green, blue);
+      else
+        drawEach(gl, count, red, green, blue);
+    }
+    instances.clear();
+  }
+
+  /**
+   * Frees everything on the graphics card (apart from the sphere, which
+   * belongs to whoever passed it in)
+   * 
+   * @param gl
+   */
+  void release(GL2 gl) {
+    if (program != null) {
+      GL2ES3 gl3 = gl.getGL2ES3();
+      program.release(gl3);
+      gl3.glDeleteBuffers(1, instanceBuffer, 0);
+      program = null;
+    }
+  }
+
+  /**
+   * Draws the spheres in one instanced call
+   * 
+   * @param gl
+   * @param count
+   * @param red
+   * @param green
+   * @param blue
+   */
+  private void drawInstanced(GL2 gl, int count, float red, float green, float blue) {
+    GL2ES3 gl3 = gl.getGL2ES3();
+    gl.glGetFloatv(GLMatrixFunc.GL_PROJECTION_MATRIX, projection, 0);
+    gl.glGetFloatv(GLMatrixFunc.GL_MODELVIEW_MATRIX, modelView, 0);
+
+    program.use(gl3);
+    gl3.glUniformMatrix4fv(projectionUniform, 1, false, projection, 0);
+    gl3.glUniformMatrix4fv(modelViewUniform, 1, false, modelView, 0);
+    gl3.glUniform3f(colorUniform, red, green, blue);
+
+    // Upload the instances, making the buffer bigger if they don't fit
+    gl3.glBindBuffer(GL.GL_ARRAY_BUFFER, instanceBuffer[0]);
+    if (count > instanceCapacity) {
+      instanceCapacity = Math.max(count, instanceCapacity * 2);
+      gl3.glBufferData(GL.GL_ARRAY_BUFFER, (long) instanceCapacity * FLOATS_PER_INSTANCE * Buffers.SIZEOF_FLOAT,
+          null, GL.GL_DYNAMIC_DRAW);
+    }
+    gl3.glBufferSubData(GL.GL_ARRAY_BUFFER, 0, (long) count * FLOATS_PER_INSTANCE * Buffers.SIZEOF_FLOAT,
+        instances);
+    gl3.glVertexAttribPointer(INSTANCE, FLOATS_PER_INSTANCE, GL.GL_FLOAT, false, 0, 0);
+    gl3.glEnableVertexAttribArray(INSTANCE);
+    gl3.glVertexAttribDivisor(INSTANCE, 1);
+
+    sphere.drawInstanced(gl3, POSITION, count);
+
+    gl3.glVertexAttribDivisor(INSTANCE, 0);
+    gl3.glDisableVertexAttribArray(INSTANCE);
+    gl3.glBindBuffer(GL.GL_ARRAY_BUFFER, 0);
+    gl3.glUseProgram(0);
+  }
+
+  /**
+   * Draws the spheres one at a time with the fixed-function pipeline
+   * 
+   * @param gl
+   * @param count
+   * @param red
+   * @param green
+   * @param blue
+   */
+  private void drawEach(GL2 gl, int count, float red, float green, float blue) {
+    gl.glColor3f(red, green, blue);
+    for (int i = 0; i < count * FLOATS_PER_INSTANCE; i += FLOATS_PER_INSTANCE) {
+      double radius = instances.get(i + 3);
+      gl.glPushMatrix();
+      gl.glTranslated(instances.get(i), instances.get(i + 1), instances.get(i + 2));
+      gl.glScaled(radius, radius, radius);
+      sphere.draw(gl);
+      gl.glPopMatrix();
+    }
+  }
+}
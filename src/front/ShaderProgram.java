@@ -0,0 +1,167 @@
+package front;
+
+import java.nio.charset.StandardCharsets;
+
+import com.jogamp.opengl.GL2ES2;
+import com.jogamp.opengl.GL2ES3;
+import com.jogamp.opengl.GLException;
+
+/**
+ * This class represents a GLSL program made from a vertex shader and a
+ * fragment shader. Vertex attributes are bound to fixed locations before
+ * linking, so callers can use the locations they asked for without looking
+ * them up.
+ * 
+ * It belongs to the GL context it was made in, and release() should be called
+ * once it isn't needed anymore.
+ */
+class ShaderProgram {
+
+  // The program name
+  private int program;
+
+  /**
+   * Constructor, compiles and links the program
+   * 
+   * @param gl
+   * @param vertexSource
+   * @param fragmentSource
+   * @param attributes     -- the names of the vertex attributes, which get
+   *                       locations 0, 1, 2...
+   * @throws GLException if either shader doesn't compile or the program
+   *                     doesn't link, with the driver's log as the message
+   */
+  ShaderProgram(GL2ES2 gl, String vertexSource, String fragmentSource, String... attributes) {
+    this(gl, vertexSource, fragmentSource, null, attributes);
+  }
+
+  /**
+   * Constructor, compiles and links a program whose vertex shader's outputs
+   * can be captured with transform feedback
+   * 
+   * @param gl
+   * @param vertexSource
+   * @param fragmentSource
+   * @param feedback       -- the names of the vertex shader outputs to
+   *                       capture, interleaved in one buffer
+   * @param attributes     -- the names of the vertex attributes, which get
+   *                       locations 0, 1, 2...
+   * @throws GLException if either shader doesn't compile or the program
+   *                     doesn't link, with the driver's log as the message
+   */
+  ShaderProgram(GL2ES3 gl, String vertexSource, String fragmentSource, String[] feedback, String... attributes) {
+    this((GL2ES2) gl, vertexSource, fragmentSource, feedback, attributes);
+  }
+
+  /**
+   * Constructor, does the work for the other two
+   * 
+   * @param gl
+   * @param vertexSource
+   * @param fragmentSource
+   * @param feedback       -- the outputs to capture (or null for none, in
+   *                       which case gl doesn't have to be a GL2ES3)
+   * @param attributes
+   */
+  private ShaderProgram(GL2ES2 gl, String vertexSource, String fragmentSource, String[] feedback,
+      String[] attributes) {
+    int vertexShader = compile(gl, GL2ES2.GL_VERTEX_SHADER, vertexSource);
+    int fragmentShader;
+    try {
+      fragmentShader = compile(gl, GL2ES2.GL_FRAGMENT_SHADER, fragmentSource);
+    } catch (GLException e) {
+      gl.glDeleteShader(vertexShader);
+      throw e;
+    }
+
+    program = gl.glCreateProgram();
+    gl.glAttachShader(program, vertexShader);
+    gl.glAttachShader(program, fragmentShader);
+    for (int i = 0; i < attributes.length; i++)
+      gl.glBindAttribLocation(program, i, attributes[i]);
+    if (feedback != null)
+      gl.getGL2ES3().glTransformFeedbackVaryings(program, feedback.length, feedback, GL2ES3.GL_INTERLEAVED_ATTRIBS);
+    gl.glLinkProgram(program);
+
+    // The shaders aren't needed once the program is linked
+    gl.glDetachShader(program, vertexShader);
+    gl.glDetachShader(program, fragmentShader);
+    gl.glDeleteShader(vertexShader);
+    gl.glDeleteShader(fragmentShader);
+
+    int[] status = new int[1];
+    gl.glGetProgramiv(program, GL2ES2.GL_LINK_STATUS, status, 0);
+    if (status[0] == 0) {
+      String log = programLog(gl, program);
+      gl.glDeleteProgram(program);
+      throw new GLException("Couldn't link shader program: " + log);
+    }
+  }
+
+  /**
+   * Makes this the program that draws from now on
+   * 
+   * @param gl
+   */
+  void use(GL2ES2 gl) {
+    gl.glUseProgram(program);
+  }
+
+  /**
+   * @param gl
+   * @param name
+   * @return the location of a uniform variable (-1 if there isn't one)
+   */
+  int getUniform(GL2ES2 gl, String name) {
+    return gl.glGetUniformLocation(program, name);
+  }
+
+  /**
+   * Frees the program on the graphics card. It can't be used after this.
+   * 
+   * @param gl
+   */
+  void release(GL2ES2 gl) {
+    gl.glDeleteProgram(program);
+    program = 0;
+  }
+
+  /**
+   * Compiles one shader
+   * 
+   * @param gl
+   * @param type
+   * @param source
+   * @return the shader name
+   * @throws GLException if it doesn't compile
+   */
+  private static int compile(GL2ES2 gl, int type, String source) {
+    int shader = gl.glCreateShader(type);
+    gl.glShaderSource(shader, 1, new String[] { source }, new int[] { source.length() }, 0);
+    gl.glCompileShader(shader);
+    int[] status = new int[1];
+    gl.glGetShaderiv(shader, GL2ES2.GL_COMPILE_STATUS, status, 0);
+    if (status[0] == 0) {
+      int[] length = new int[1];
+      gl.glGetShaderiv(shader, GL2ES2.GL_INFO_LOG_LENGTH, length, 0);
+      byte[] log = new byte[Math.max(1, length[0])];
+      gl.glGetShaderInfoLog(shader, log.length, length, 0, log, 0);
+      gl.glDeleteShader(shader);
+      throw new GLException("Couldn't compile shader: " + new String(log, 0, length[0], StandardCharsets.UTF_8));
+    }
+    return shader;
+  }
+
+  /**
+   * @param gl
+   * @param program
+   * @return the program's info log
+   */
+  private static String programLog(GL2ES2 gl, int program) {
+    int[] length = new int[1];
+    gl.glGetProgramiv(program, GL2ES2.GL_INFO_LOG_LENGTH, length, 0);
+    byte[] log = new byte[Math.max(1, length[0])];
+    gl.glGetProgramInfoLog(program, log.length, length, 0, log, 0);
+    return new String(log, 0, length[0], StandardCharsets.UTF_8);
+  }
+}
@@ -2,20 +2,23 @@ package front;
 
 import com.jogamp.opengl.GL;
 import com.jogamp.opengl.GL2;
+import com.jogamp.opengl.GL3;
 import com.jogamp.opengl.GLAutoDrawable;
-import javax.vecmath.Vector3d;
 
-import com.jogamp.opengl.util.gl2.GLUT;
-
-import back.Level;
+import back.Coordinates;
 import back.LevelSchema;
-import back.Snake;
-import back.Snake.Segment;
+import back.Snapshot;
 
 /**
  * This class represents the algorithm for drawing the level onto a torus.
  * Subclasses hook into the algorithm by providing their own setupCamera() and
- * transformScene() subroutines.
+ * transformScene() subroutines. The level is drawn from a Snapshot, so it
+ * doesn't matter which thread is updating the level itself.
+ * 
+ * The level's flat coordinates are normally mapped onto the torus on the CPU.
+ * With -Dsnake.torusShader=true and a GL 3.3 context, TorusShader maps them on
+ * the graphics card instead, and only the flat positions of the snake and the
+ * food are sent each frame.
  * 
  * @author Jim
  */
@@ -25,154 +28,140 @@ public abstract class ThreeDDrawingStrategy {
    * Sets up the camera for viewing the level in 3D.
    * 
    * @param gl
-   * @param level
+   * @param snapshot
+   * @param fraction -- how far it is from the tick before the snapshot to the
+   *                 snapshot (see Snapshot.getFraction())
    */
-  protected abstract void setupCamera(GL2 gl, Level level);
+  protected abstract void setupCamera(GL2 gl, Snapshot snapshot, double fraction);
 
   /**
    * Transforms the whole level
    * 
    * @param gl
-   * @param level
+   * @param snapshot
    */
-  protected abstract void transformScene(GL2 gl, Level level);
+  protected abstract void transformScene(GL2 gl, Snapshot snapshot);
 
   /**
-   * The basic algorithm for drawing the 3D scene
+   * The basic algorithm for drawing the 3D scene. The snake is drawn part of the
+   * way between the tick before the snapshot and the snapshot, so that it moves
+   * smoothly when there are more frames than ticks.
    * 
    * @param drawable
-   * @param level
+   * @param snapshot
+   * @param fraction -- how far it is from the tick before the snapshot to the
+   *                 snapshot (see Snapshot.getFraction())
    */
-  public final void render(GLAutoDrawable drawable, Level level) {
+  public final void render(GLAutoDrawable drawable, Snapshot snapshot, double fraction) {
     GL2 gl = drawable.getGL().getGL2();
-    GLUT glut = new GLUT();
+    MeshCache meshes = MeshCache.get(drawable);
 
     gl.glEnable(GL.GL_DEPTH_TEST);
 
     // Setup the camera, the subclass provides the implementation
-    setupCamera(gl, level);
+    setupCamera(gl, snapshot, fraction);
 
     // Remember where we were before transforming the whole scene
     gl.glPushMatrix();
 
     // Transform the scene, the subclass provides the implementation
-    transformScene(gl, level);
+    transformScene(gl, snapshot);
 
     // Now we just draw everything..
-    //
+    TorusShader torusShader = meshes.getTorusShader(gl);
+    if (torusShader != null)
+      drawMappedOnGpu(gl, meshes, torusShader, snapshot, fraction);
+    else
+      drawMappedOnCpu(gl, meshes, snapshot, fraction);
 
-    // Draw the torus
-    gl.glColor3f(0, 1f, 0);
-    glut.glutWireTorus(level.getSchema().innerRadius(), level.getSchema().outerRadius(),
-        (int) (level.getSchema().getHeight() / GameDisplay.LINE_SPACING),
-        (int) (level.getSchema().getWidth() / GameDisplay.LINE_SPACING));
+    // Go back to where we were before transforming the whole scene
+    gl.glPopMatrix();
+  }
 
-    // Draw the snake
-    gl.glColor3d(1, 0, 0);
-    for (Snake.Segment s : level.getSnake()) {
-      gl.glPushMatrix();
-      Vector3d coords = s.getCoordinates().get3DCoordinates(s.threeDRadius());
-      gl.glTranslated(coords.x, coords.y, coords.z);
-      glut.glutWireSphere(s.threeDRadius(), 20, 20);
-      gl.glPopMatrix();
+  /**
+   * Draws everything, mapping it onto the torus on the CPU
+   * 
+   * @param gl
+   * @param meshes
+   * @param snapshot
+   * @param fraction
+   */
+  private void drawMappedOnCpu(GL2 gl, MeshCache meshes, Snapshot snapshot, double fraction) {
+
+    // Draw the torus, whose wireframe is only made once for the level
+    gl.glColor3f(0, 1f, 0);
+    LevelSchema schema = snapshot.getSchema();
+    meshes.getTorus(gl, schema).draw(gl);
+
+    // For mapping positions onto the torus, and scratch space for the results
+    Coordinates mapping = new Coordinates(schema, 0, 0);
+    double[] coords = new double[3];
+
+    // Draw the snake, all of the segments together
+    SegmentRenderer segments = meshes.getSegments(gl);
+    for (int i = 0; i < snapshot.getSnakeLength(); i++) {
+      double x = snapshot.getSnakeX(i, fraction);
+      double y = snapshot.getSnakeY(i, fraction);
+      double radius = mapping.threeDRadius(y, snapshot.getSegmentRadius());
+      mapping.get3DCoordinates(x, y, radius, coords, 0);
+      segments.add(coords[0], coords[1], coords[2], radius);
     }
+    segments.draw(gl, 1, 0, 0);
 
     // Draw the food
-    if (level.getFood() != null) {
+    if (snapshot.hasFood()) {
       gl.glColor3d(1, 0, 1);
       gl.glPushMatrix();
-      Vector3d coords = level.getFood().getCoordinates().get3DCoordinates(level.getFood().threeDRadius());
-      gl.glTranslated(coords.x, coords.y, coords.z);
-      glut.glutWireSphere(level.getFood().threeDRadius(), 10, 10);
+      double radius = mapping.threeDRadius(snapshot.getFoodY(), snapshot.getFoodRadius());
+      mapping.get3DCoordinates(snapshot.getFoodX(), snapshot.getFoodY(), radius, coords, 0);
+      gl.glTranslated(coords[0], coords[1], coords[2]);
+      gl.glScaled(radius, radius, radius);
+      meshes.getFoodSphere(gl).draw(gl);
       gl.glPopMatrix();
     }
 
-    // Draw the Obstacles..
-    //
+    // Draw the obstacles, whose wireframes are only made once for the level
     gl.glColor3d(.3, .3, 1);
+    meshes.getObstacles(gl, schema).draw(gl);
+  }
 
-    // This is the ideal spacing between adjacent
-    // lines on the obstacle
-    final double IDEAL_CHUNK_SIZE = 3;
-    for (LevelSchema.Obstacle o : level.getSchema().getObstacles()) {
-
-      // Figure out the number of / size of chunks along the x
-      // direction
-      int numXChunks = (int) (o.getWidth() / IDEAL_CHUNK_SIZE);
-      if (numXChunks == 0)
-        numXChunks++;
-      double xChunkSize = o.getWidth() / numXChunks;
-
-      // Figure out the number of / size of chunks along the y
-      // direction
-      int numYChunks = (int) (o.getHeight() / IDEAL_CHUNK_SIZE);
-      if (numYChunks == 0)
-        numYChunks++;
-      double yChunkSize = o.getHeight() / numYChunks;
-
-      // The obstacle has two layers of vertices. Set them up.
-      Vector3d[][] bottomLayer = new Vector3d[numXChunks + 1][numYChunks + 1];
-      Vector3d[][] topLayer = new Vector3d[numXChunks + 1][numYChunks + 1];
-      for (int x = 0; x <= numXChunks; x++) {
-        for (int y = 0; y <= numYChunks; y++) {
-
-          double xCoord = o.getLeftSideX() + x * xChunkSize;
-          double yCoord = o.getTopSideY() + y * yChunkSize;
-
-          bottomLayer[x][y] = o.getCoordinates().get3DCoordinates(xCoord, yCoord, 0);
-          topLayer[x][y] = o.getCoordinates().get3DCoordinates(xCoord, yCoord, o.threeDHeight());
-        }
-      }
-
-      // Draw the lines that go along the y direction on the bottom layer
-      for (int x = 0; x <= numXChunks; x++) {
-        gl.glBegin(GL.GL_LINE_STRIP);
-        for (int y = 0; y <= numYChunks; y++) {
-          gl.glVertex3d(bottomLayer[x][y].x, bottomLayer[x][y].y, bottomLayer[x][y].z);
-        }
-        gl.glEnd();
-      }
-
-      // Draw the lines that go along the x direction on the bottom layer
-      for (int y = 0; y <= numYChunks; y++) {
-        gl.glBegin(GL.GL_LINE_STRIP);
-        for (int x = 0; x <= numXChunks; x++) {
-          gl.glVertex3d(bottomLayer[x][y].x, bottomLayer[x][y].y, bottomLayer[x][y].z);
-        }
-        gl.glEnd();
-      }
-
-      // Draw the lines that go along the y direction on the top layer
-      for (int x = 0; x <= numXChunks; x++) {
-        gl.glBegin(GL.GL_LINE_STRIP);
-        for (int y = 0; y <= numYChunks; y++) {
-          gl.glVertex3d(topLayer[x][y].x, topLayer[x][y].y, topLayer[x][y].z);
-        }
-        gl.glEnd();
-      }
-
-      // Draw the lines that go along the x direction on the top layer
-      for (int y = 0; y <= numYChunks; y++) {
-        gl.glBegin(GL.GL_LINE_STRIP);
-        for (int x = 0; x <= numXChunks; x++) {
-          gl.glVertex3d(topLayer[x][y].x, topLayer[x][y].y, topLayer[x][y].z);
-        }
-        gl.glEnd();
-      }
-
-      // Draw the lines that go from the bottom layer to the top layer
-      gl.glBegin(GL.GL_LINES);
-      for (int x = 0; x <= numXChunks; x++) {
-        for (int y = 0; y <= numYChunks; y++) {
-          gl.glVertex3d(bottomLayer[x][y].x, bottomLayer[x][y].y, bottomLayer[x][y].z);
-          gl.glVertex3d(topLayer[x][y].x, topLayer[x][y].y, topLayer[x][y].z);
-        }
-      }
-      gl.glEnd();
+  /**
+   * Draws everything flat, letting the torus shader map it onto the torus
+   * 
+   * @param gl
+   * @param meshes
+   * @param torusShader
+   * @param snapshot
+   * @param fraction
+   */
+  private void drawMappedOnGpu(GL2 gl, MeshCache meshes, TorusShader torusShader, Snapshot snapshot,
+      double fraction) {
+    LevelSchema schema = snapshot.getSchema();
+    GL3 gl3 = gl.getGL3();
+
+    // Make sure the meshes exist before the shader takes over
+    WireMesh torus = meshes.getFlatTorus(gl, schema);
+    WireMesh obstacles = meshes.getFlatObstacles(gl, schema);
+    WireMesh segmentSphere = meshes.getSegmentSphere(gl);
+    WireMesh foodSphere = meshes.getFoodSphere(gl);
+
+    torusShader.begin(gl, schema);
+    torusShader.drawMesh(gl3, torus, 0, 1f, 0);
+
+    // Draw the snake, all of the segments together
+    for (int i = 0; i < snapshot.getSnakeLength(); i++)
+      torusShader.addSphere(snapshot.getSnakeX(i, fraction), snapshot.getSnakeY(i, fraction),
+          snapshot.getSegmentRadius());
+    torusShader.drawSpheres(gl3, segmentSphere, 1, 0, 0);
+
+    // Draw the food
+    if (snapshot.hasFood()) {
+      torusShader.addSphere(snapshot.getFoodX(), snapshot.getFoodY(), snapshot.getFoodRadius());
+      torusShader.drawSpheres(gl3, foodSphere, 1, 0, 1);
     }
 
-    // Go back to where we were before transforming the whole scene
-    gl.glPopMatrix();
+    torusShader.drawMesh(gl3, obstacles, .3f, .3f, 1);
+    torusShader.end(gl3);
   }
 
 }
@@ -3,7 +3,8 @@ import com.jogamp.opengl.GL2;
 import com.jogamp.opengl.fixedfunc.GLMatrixFunc;
 import com.jogamp.opengl.glu.GLU;
 
-import back.Level;
+import back.Coordinates;
+import back.Snapshot;
 
 import javax.vecmath.Matrix4d;
 import javax.vecmath.Vector4d;
@@ -20,13 +21,18 @@ public class ThreeDDrawingStrategyGame extends ThreeDDrawingStrategy {
    * in the direction that the snake is looking.
    */
   @Override
-  protected void setupCamera(GL2 gl, Level level) {
+  protected void setupCamera(GL2 gl, Snapshot snapshot, double fraction) {
+    
+    // The head, and its radius in 3D
+    Coordinates head = new Coordinates(snapshot.getSchema(), snapshot.getSnakeX(0, fraction),
+        snapshot.getSnakeY(0, fraction));
+    double headRadius = head.threeDRadius(head.getY(), snapshot.getSegmentRadius());
     
     // setup the frustum
     gl.glMatrixMode(GLMatrixFunc.GL_PROJECTION);
     gl.glLoadIdentity();
-    double nearRadius = level.getSnake().getHead().threeDRadius()*2;
-    gl.glFrustum(-nearRadius, nearRadius, -nearRadius, nearRadius, level.getSnake().getHead().threeDRadius()*1.1, 1000);
+    double nearRadius = headRadius*2;
+    gl.glFrustum(-nearRadius, nearRadius, -nearRadius, nearRadius, headRadius*1.1, 1000);
     
     // go back to modelview
     gl.glMatrixMode(GLMatrixFunc.GL_MODELVIEW);
@@ -36,14 +42,13 @@ public class ThreeDDrawingStrategyGame extends ThreeDDrawingStrategy {
     //
     
     // Transformation for the camera location
-    Matrix4d cameraTransformation =
-      level.getSnake().getHead().getCoordinates().getCoordinatesTransformation(level.getSnake().getHead().threeDRadius());
+    Matrix4d cameraTransformation = head.getCoordinatesTransformation(headRadius);
     
     // Transformation for moving to a point above the camera
     Matrix4d aboveCameraTransformation = new Matrix4d(cameraTransformation);
     aboveCameraTransformation.mul( new Matrix4d(
       1, 0, 0, 0,
-      0, 1, 0, level.getSnake().getHead().threeDRadius(),
+      0, 1, 0, headRadius,
       0, 0, 1, 0,
       0, 0, 0, 1
     ));
@@ -52,10 +57,10 @@ public class ThreeDDrawingStrategyGame extends ThreeDDrawingStrategy {
     // in the direction that the snake is looking.
     Matrix4d lookingAtTransformation = new Matrix4d(cameraTransformation);
     Matrix4d headFacingTransformation = new Matrix4d();
-    headFacingTransformation.rotY(level.getSnake().getHead().getWaypoint().getAngle());
+    headFacingTransformation.rotY(snapshot.getHeadAngle(fraction));
     lookingAtTransformation.mul(headFacingTransformation);
     lookingAtTransformation.mul(new Matrix4d(
-      1, 0, 0, -level.getSnake().getHead().threeDRadius(),
+      1, 0, 0, -headRadius,
       0, 1, 0, 0,
       0, 0, 1, 0,
       0, 0, 0, 1
@@ -83,6 +88,6 @@ public class ThreeDDrawingStrategyGame extends ThreeDDrawingStrategy {
   }
 
   @Override
-  protected void transformScene(GL2 gl, Level level) {}
+  protected void transformScene(GL2 gl, Snapshot snapshot) {}
 
 }
@@ -3,7 +3,8 @@ package front;
 import com.jogamp.opengl.GL2;
 import com.jogamp.opengl.fixedfunc.GLMatrixFunc;
 
-import back.Level;
+import back.LevelSchema;
+import back.Snapshot;
 
 /**
  * This class represents the algorithm for dawing the level in 3D onto the title
@@ -26,21 +27,21 @@ public class ThreeDDrawingStrategyTitleScreen extends ThreeDDrawingStrategy {
   }
 
   @Override
-  protected void setupCamera(GL2 gl, Level level) {
+  protected void setupCamera(GL2 gl, Snapshot snapshot, double fraction) {
     gl.glMatrixMode(GLMatrixFunc.GL_PROJECTION);
     gl.glLoadIdentity();
 
-    gl.glOrtho(-level.getSchema().outerRadius() - level.getSchema().innerRadius() - 30,
-        level.getSchema().outerRadius() + level.getSchema().innerRadius() + 30,
-        -level.getSchema().outerRadius() - level.getSchema().innerRadius() - 30,
-        level.getSchema().outerRadius() + level.getSchema().innerRadius() + 30, -100000, 100000);
+    LevelSchema schema = snapshot.getSchema();
+    gl.glOrtho(-schema.outerRadius() - schema.innerRadius() - 30, schema.outerRadius() + schema.innerRadius() + 30,
+        -schema.outerRadius() - schema.innerRadius() - 30, schema.outerRadius() + schema.innerRadius() + 30, -100000,
+        100000);
 
     gl.glMatrixMode(GLMatrixFunc.GL_MODELVIEW);
     gl.glLoadIdentity();
   }
 
   @Override
-  protected void transformScene(GL2 gl, Level level) {
+  protected void transformScene(GL2 gl, Snapshot snapshot) {
     gl.glRotated(angle, 1, 1, 0);
   }
 
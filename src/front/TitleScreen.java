@@ -12,6 +12,7 @@ import com.jogamp.opengl.GLAutoDrawable;
 
 import back.Level;
 import back.LevelSchema;
+import back.Snapshot;
 
 import javax.swing.Timer;
 import javax.vecmath.Color3f;
@@ -32,6 +33,9 @@ public class TitleScreen extends Display implements KeyListener, ActionListener
   // The level that is selected (if any)
   private Level selectedLevel;
 
+  // What the selected level looks like, for the preview
+  private Snapshot selectedSnapshot;
+
   // Special code for the level index when no level is selected
   private final int NO_LEVEL_INDEX = -1;
 
@@ -82,6 +86,7 @@ public class TitleScreen extends Display implements KeyListener, ActionListener
   public void selectLevel(int levelNumber) {
     selectedLevelIndex = levelNumber;
     selectedLevel = new Level(this.levelSchemas.get(levelNumber));
+    selectedSnapshot = new Snapshot(selectedLevel, 0);
     previewAngle = 0;
     if (!animation.isRunning())
       animation.start();
@@ -127,8 +132,12 @@ public class TitleScreen extends Display implements KeyListener, ActionListener
     display();
   }
 
+  /**
+   * Frees the preview's meshes along with the GL context
+   */
   @Override
   public void dispose(GLAutoDrawable drawable) {
+    MeshCache.release(drawable);
   }
 
   /**
@@ -330,7 +339,7 @@ public class TitleScreen extends Display implements KeyListener, ActionListener
     void render(GLAutoDrawable drawable) {
       GL gl = drawable.getGL();
       gl.glDisable(GL.GL_DEPTH_TEST);
-      new ThreeDDrawingStrategyTitleScreen(previewAngle).render(drawable, selectedLevel);
+      new ThreeDDrawingStrategyTitleScreen(previewAngle).render(drawable, selectedSnapshot, 1);
     }
   }
 }
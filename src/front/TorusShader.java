@@ -0,0 +1,316 @@
+package front;
+
+import java.nio.FloatBuffer;
+
+import com.jogamp.common.nio.Buffers;
+import com.jogamp.opengl.GL;
+import com.jogamp.opengl.GL2;
+import com.jogamp.opengl.GL2ES3;
+import com.jogamp.opengl.GL3;
+import com.jogamp.opengl.GLException;
+import com.jogamp.opengl.fixedfunc.GLMatrixFunc;
+
+import back.LevelSchema;
+
+/**
+ * This class maps flat level coordinates onto the torus on the graphics card,
+ * instead of with Coordinates on the CPU. Meshes are made flat, with (x, y,
+ * height) vertices, and the vertex shader does what get3DCoordinates() does.
+ * The snake's segments and the food are drawn by sending only the flat center
+ * and radius of each circle; the shader works out the sphere's radius (like
+ * threeDRadius()) and where its center goes.
+ * 
+ * The mapping is done in floats rather than doubles, and map() reads back
+ * what the shader made so it can be compared against the CPU.
+ * 
+ * It belongs to the GL context it was made in, and release() should be called
+ * once it isn't needed anymore.
+ */
+class TorusShader {
+
+  // The system property that turns the shader on
+  final static String PROPERTY = "snake.torusShader";
+
+  // Maps flat coordinates onto the torus, using the fixed-function matrices
+  // that were set up for the rest of the scene. With spheres set, position is
+  // a point on the unit sphere and instance is the flat (x, y, radius) of the
+  // circle it's drawn for. Otherwise position is a flat (x, y, height).
+  private final static String VERTEX_SHADER = String.join("\n",
+      "#version 150",
+      "uniform mat4 projection;",
+      "uniform mat4 modelView;",
+      "uniform float innerRadius;",
+      "uniform float outerRadius;",
+      "uniform float xAngleScale;",
+      "uniform float yAngleScale;",
+      "uniform bool spheres;",
+      "in vec3 position;",
+      "in vec3 instance;",
+      "out vec3 mapped;",
+      "vec3 toTorus(vec3 flat) {",
+      "  float longAngle = flat.x * xAngleScale;",
+      "  float shortAngle = flat.y * yAngleScale;",
+      "  float tubeRadius = innerRadius + flat.z;",
+      "  float distanceFromAxis = outerRadius + cos(shortAngle) * tubeRadius;",
+      "  return vec3(-sin(longAngle) * distanceFromAxis, cos(longAngle) * distanceFromAxis,",
+      "      -sin(shortAngle) * tubeRadius);",
+      "}",
+      "void main() {",
+      "  if (spheres) {",
+      "    float radius = tan(instance.z * xAngleScale / 2.0) * 2.0",
+      "        * (outerRadius + cos(instance.y * yAngleScale) * innerRadius);",
+      "    mapped = toTorus(vec3(instance.xy, radius)) + position * radius;",
+      "  } else {",
+      "    mapped = toTorus(position);",
+      "  }",
+      "  gl_Position = projection * modelView * vec4(mapped, 1.0);",
+      "}");
+
+  // Draws everything in one color
+  private final static String FRAGMENT_SHADER = String.join("\n",
+      "#version 150",
+      "uniform vec3 color;",
+      "out vec4 fragColor;",
+      "void main() {",
+      "  fragColor = vec4(color, 1.0);",
+      "}");
+
+  // Attribute locations
+  private final static int POSITION = 0;
+  private final static int INSTANCE = 1;
+
+  // Floats per sphere: flat center x and y, then flat radius
+  private final static int FLOATS_PER_INSTANCE = 3;
+
+  // The program and its uniforms
+  private ShaderProgram program;
+  private int projectionUniform;
+  private int modelViewUniform;
+  private int innerRadiusUniform;
+  private int outerRadiusUniform;
+  private int xAngleScaleUniform;
+  private int yAngleScaleUniform;
+  private int spheresUniform;
+  private int colorUniform;
+
+  // The vertex array that holds the attribute setup while drawing
+  private int[] vertexArray = new int[1];
+
+  // Buffer name for the spheres, and how many spheres it has room for
+  private int[] instanceBuffer = new int[1];
+  private int instanceCapacity = 0;
+
+  // The spheres added since the last drawSpheres()
+  private FloatBuffer instances = Buffers.newDirectFloatBuffer(64 * FLOATS_PER_INSTANCE);
+
+  // Scratch space for reading the fixed-function matrices
+  private float[] projection = new float[16];
+  private float[] modelView = new float[16];
+
+  /**
+   * Constructor, compiles the shader
+   * 
+   * @param gl
+   * @throws GLException if the shader doesn't compile or link
+   */
+  TorusShader(GL3 gl) {
+    program = new ShaderProgram(gl, VERTEX_SHADER, FRAGMENT_SHADER, new String[] { "mapped" }, "position",
+        "instance");
+    projectionUniform = program.getUniform(gl, "projection");
+    modelViewUniform = program.getUniform(gl, "modelView");
+    innerRadiusUniform = program.getUniform(gl, "innerRadius");
+    outerRadiusUniform = program.getUniform(gl, "outerRadius");
+    xAngleScaleUniform = program.getUniform(gl, "xAngleScale");
+    yAngleScaleUniform = program.getUniform(gl, "yAngleScale");
+    spheresUniform = program.getUniform(gl, "spheres");
+    colorUniform = program.getUniform(gl, "color");
+    gl.glGenVertexArrays(1, vertexArray, 0);
+    gl.glGenBuffers(1, instanceBuffer, 0);
+  }
+
+  /**
+   * Starts drawing a level, with the camera that's set up in the
+   * fixed-function matrices. Should be followed by drawMesh() and
+   * drawSpheres(), and then end().
+   * 
+   * @param gl
+   * @param schema
+   */
+  void begin(GL2 gl, LevelSchema schema) {
+    GL3 gl3 = gl.getGL3();
+    gl.glGetFloatv(GLMatrixFunc.GL_PROJECTION_MATRIX, projection, 0);
+    gl.glGetFloatv(GLMatrixFunc.GL_MODELVIEW_MATRIX, modelView, 0);
+    use(gl3, schema);
+    gl3.glUniformMatrix4fv(projectionUniform, 1, false, projection, 0);
+    gl3.glUniformMatrix4fv(modelViewUniform, 1, false, modelView, 0);
+  }
+
+  /**
+   * Draws a flat mesh onto the torus
+   * 
+   * @param gl
+   * @param mesh  -- made flat, with (x, y, height) vertices
+   * @param red
+   * @param green
+   * @param blue
+   */
+  void drawMesh(GL3 gl, WireMesh mesh, float red, float green, float blue) {
+    gl.glUniform1i(spheresUniform, 0);
+    gl.glUniform3f(colorUniform, red, green, blue);
+    mesh.drawInstanced(gl, POSITION, 1);
+  }
+
+  /**
+   * Adds a sphere to be drawn by the next call to drawSpheres()
+   * 
+   * @param x      -- x coordinate of the circle's center on the level
+   * @param y      -- y coordinate of the circle's center on the level
+   * @param radius -- radius of the circle on the level
+   */
+  void addSphere(double x, double y, double radius) {
+    if (instances.remaining() < FLOATS_PER_INSTANCE) {
+      FloatBuffer bigger = Buffers.newDirectFloatBuffer(instances.capacity() * 2);
+      instances.flip();
+      bigger.put(instances);
+      instances = bigger;
+    }
+    instances.put((float) x).put((float) y).put((float) radius);
+  }
+
+  /**
+   * Draws every sphere that has been added in one instanced call, and forgets
+   * them
+   * 
+   * @param gl
+   * @param sphere -- a sphere of radius 1 around the origin
+   * @param red
+   * @param green
+   * @param blue
+   */
+  void drawSpheres(GL3 gl, WireMesh sphere, float red, float green, float blue) {
+    instances.flip();
+    int count = instances.remaining() / FLOATS_PER_INSTANCE;
+    if (count > 0) {
+      gl.glUniform1i(spheresUniform, 1);
+      gl.glUniform3f(colorUniform, red, green, blue);
+
+      // Upload the spheres, making the buffer bigger if they don't fit
+      gl.glBindBuffer(GL.GL_ARRAY_BUFFER, instanceBuffer[0]);
+      if (count > instanceCapacity) {
+        instanceCapacity = Math.max(count, instanceCapacity * 2);
+        gl.glBufferData(GL.GL_ARRAY_BUFFER, (long) instanceCapacity * FLOATS_PER_INSTANCE * Buffers.SIZEOF_FLOAT,
+            null, GL.GL_DYNAMIC_DRAW);
+      }
+      gl.glBufferSubData(GL.GL_ARRAY_BUFFER, 0, (long) count * FLOATS_PER_INSTANCE * Buffers.SIZEOF_FLOAT,
+          instances);
+      gl.glVertexAttribPointer(INSTANCE, FLOATS_PER_INSTANCE, GL.GL_FLOAT, false, 0, 0);
+      gl.glEnableVertexAttribArray(INSTANCE);
+      gl.glVertexAttribDivisor(INSTANCE, 1);
+
+      sphere.drawInstanced(gl, POSITION, count);
+
+      gl.glVertexAttribDivisor(INSTANCE, 0);
+      gl.glDisableVertexAttribArray(INSTANCE);
+      gl.glBindBuffer(GL.GL_ARRAY_BUFFER, 0);
+    }
+    instances.clear();
+  }
+
+  /**
+   * Finishes drawing a level, going back to the fixed-function pipeline
+   * 
+   * @param gl
+   */
+  void end(GL3 gl) {
+    gl.glBindVertexArray(0);
+    gl.glUseProgram(0);
+  }
+
+  /**
+   * Maps points with the shader and reads back where they ended up, without
+   * drawing anything
+   * 
+   * @param gl
+   * @param schema
+   * @param positions -- flat (x, y, height) points, or points on the unit
+   *                  sphere if instances isn't null
+   * @param instances -- the flat (x, y, radius) of the circle that each point's
+   *                  sphere is for, or null
+   * @return the (x, y, z) that each point is mapped to
+   */
+  float[] map(GL3 gl, LevelSchema schema, float[] positions, float[] instances) {
+    int count = positions.length / 3;
+    float[] identity = { 1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1 };
+    use(gl, schema);
+    gl.glUniformMatrix4fv(projectionUniform, 1, false, identity, 0);
+    gl.glUniformMatrix4fv(modelViewUniform, 1, false, identity, 0);
+    gl.glUniform1i(spheresUniform, instances != null ? 1 : 0);
+
+    // One buffer each for the positions, the instances and the results
+    int[] buffers = new int[3];
+    gl.glGenBuffers(3, buffers, 0);
+    gl.glBindBuffer(GL.GL_ARRAY_BUFFER, buffers[0]);
+    gl.glBufferData(GL.GL_ARRAY_BUFFER, (long) positions.length * Buffers.SIZEOF_FLOAT,
+        Buffers.newDirectFloatBuffer(positions), GL.GL_STATIC_DRAW);
+    gl.glVertexAttribPointer(POSITION, 3, GL.GL_FLOAT, false, 0, 0);
+    gl.glEnableVertexAttribArray(POSITION);
+    if (instances != null) {
+      gl.glBindBuffer(GL.GL_ARRAY_BUFFER, buffers[1]);
+      gl.glBufferData(GL.GL_ARRAY_BUFFER, (long) instances.length * Buffers.SIZEOF_FLOAT,
+          Buffers.newDirectFloatBuffer(instances), GL.GL_STATIC_DRAW);
+      gl.glVertexAttribPointer(INSTANCE, FLOATS_PER_INSTANCE, GL.GL_FLOAT, false, 0, 0);
+      gl.glEnableVertexAttribArray(INSTANCE);
+    }
+    gl.glBindBuffer(GL.GL_ARRAY_BUFFER, 0);
+    gl.glBindBuffer(GL2ES3.GL_TRANSFORM_FEEDBACK_BUFFER, buffers[2]);
+    gl.glBufferData(GL2ES3.GL_TRANSFORM_FEEDBACK_BUFFER, (long) count * 3 * Buffers.SIZEOF_FLOAT, null,
+        GL2ES3.GL_STATIC_READ);
+    gl.glBindBufferBase(GL2ES3.GL_TRANSFORM_FEEDBACK_BUFFER, 0, buffers[2]);
+
+    // Run the vertex shader over every point, keeping only what it outputs
+    gl.glEnable(GL2ES3.GL_RASTERIZER_DISCARD);
+    gl.glBeginTransformFeedback(GL.GL_POINTS);
+    gl.glDrawArrays(GL.GL_POINTS, 0, count);
+    gl.glEndTransformFeedback();
+    gl.glDisable(GL2ES3.GL_RASTERIZER_DISCARD);
+
+    FloatBuffer results = Buffers.newDirectFloatBuffer(count * 3);
+    gl.glGetBufferSubData(GL2ES3.GL_TRANSFORM_FEEDBACK_BUFFER, 0, (long) count * 3 * Buffers.SIZEOF_FLOAT, results);
+    gl.glBindBufferBase(GL2ES3.GL_TRANSFORM_FEEDBACK_BUFFER, 0, 0);
+    gl.glBindBuffer(GL2ES3.GL_TRANSFORM_FEEDBACK_BUFFER, 0);
+    gl.glDisableVertexAttribArray(POSITION);
+    gl.glDisableVertexAttribArray(INSTANCE);
+    gl.glDeleteBuffers(3, buffers, 0);
+    end(gl);
+
+    float[] mapped = new float[count * 3];
+    results.get(mapped);
+    return mapped;
+  }
+
+  /**
+   * Frees everything on the graphics card. It can't be used after this.
+   * 
+   * @param gl
+   */
+  void release(GL3 gl) {
+    program.release(gl);
+    gl.glDeleteVertexArrays(1, vertexArray, 0);
+    gl.glDeleteBuffers(1, instanceBuffer, 0);
+  }
+
+  /**
+   * Makes this the program that draws, for a level
+   * 
+   * @param gl
+   * @param schema
+   */
+  private void use(GL3 gl, LevelSchema schema) {
+    program.use(gl);
+    gl.glBindVertexArray(vertexArray[0]);
+    gl.glUniform1f(innerRadiusUniform, (float) schema.innerRadius());
+    gl.glUniform1f(outerRadiusUniform, (float) schema.outerRadius());
+    gl.glUniform1f(xAngleScaleUniform, (float) schema.getXAngleScale());
+    gl.glUniform1f(yAngleScaleUniform, (float) schema.getYAngleScale());
+  }
+}
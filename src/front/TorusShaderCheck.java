@@ -0,0 +1,190 @@
+package front;
+
+import java.util.List;
+
+import com.jogamp.opengl.GL3;
+import com.jogamp.opengl.GLAutoDrawable;
+import com.jogamp.opengl.GLCapabilities;
+import com.jogamp.opengl.GLDrawableFactory;
+import com.jogamp.opengl.GLEventListener;
+import com.jogamp.opengl.GLOffscreenAutoDrawable;
+import com.jogamp.opengl.GLProfile;
+
+import back.Coordinates;
+import back.LevelSchema;
+
+/**
+ * This class checks that TorusShader maps flat coordinates onto the torus to
+ * the same place that Coordinates does on the CPU. It makes an offscreen GL3
+ * core profile context, runs points from every level through the shader, reads
+ * back where they ended up and compares. It doesn't need a window or a real
+ * graphics card, so it can be run on Mesa's software renderer (with
+ * LIBGL_ALWAYS_SOFTWARE=1).
+ */
+public class TorusShaderCheck implements GLEventListener {
+
+  // The number of points to check along each direction of a level
+  private final static int SAMPLES = 24;
+
+  // The biggest error allowed, as a fraction of the size of the torus. The
+  // shader works in floats, so it can't match the CPU's doubles exactly.
+  private final static double TOLERANCE = 1e-3;
+
+  // The levels to check
+  private List<LevelSchema> schemas;
+
+  // Whether every level passed
+  private boolean passed = true;
+
+  /**
+   * Constructor, pretty basic
+   * 
+   * @param schemas
+   */
+  private TorusShaderCheck(List<LevelSchema> schemas) {
+    this.schemas = schemas;
+  }
+
+  /**
+   * Checks the shader on every level, printing how far off it was on each
+   * 
+   * @param schemas
+   * @return whether the shader matched the CPU on every level
+   */
+  public static boolean run(List<LevelSchema> schemas) {
+    if (!GLProfile.isAvailable(GLProfile.GL3)) {
+      System.out.println("No GL3 profile available");
+      return false;
+    }
+    GLProfile profile = GLProfile.get(GLProfile.GL3);
+    GLCapabilities capabilities = new GLCapabilities(profile);
+    capabilities.setOnscreen(false);
+    GLOffscreenAutoDrawable drawable = GLDrawableFactory.getFactory(profile).createOffscreenAutoDrawable(null,
+        capabilities, null, 1, 1);
+    TorusShaderCheck check = new TorusShaderCheck(schemas);
+    drawable.addGLEventListener(check);
+    try {
+      drawable.display();
+    } finally {
+      drawable.destroy();
+    }
+    return check.passed;
+  }
+
+  /**
+   * Runs the check
+   */
+  @Override
+  public void display(GLAutoDrawable drawable) {
+    GL3 gl = drawable.getGL().getGL3();
+    TorusShader shader = new TorusShader(gl);
+    try {
+      for (LevelSchema schema : schemas) {
+        double error = Math.max(checkPoints(gl, shader, schema), checkSpheres(gl, shader, schema));
+        double tolerance = TOLERANCE * (schema.outerRadius() + schema.innerRadius());
+        boolean ok = error <= tolerance;
+        System.out.println(schema.getName() + ": off by at most " + error + " (tolerance " + tolerance + ") "
+            + (ok ? "ok" : "FAILED"));
+        passed &= ok;
+      }
+    } finally {
+      shader.release(gl);
+    }
+  }
+
+  /**
+   * Maps points across the level, at heights from the surface up to the top of
+   * the obstacles, like the flat meshes
+   * 
+   * @param gl
+   * @param shader
+   * @param schema
+   * @return the biggest distance between where the shader and the CPU put a
+   *         point
+   */
+  private double checkPoints(GL3 gl, TorusShader shader, LevelSchema schema) {
+    double[] heights = { 0, schema.innerRadius() / 4, schema.innerRadius() / 2 };
+    float[] positions = new float[SAMPLES * SAMPLES * heights.length * 3];
+    double[] expected = new double[positions.length];
+    Coordinates coordinates = new Coordinates(schema, 0, 0);
+    int p = 0;
+    for (int i = 0; i < SAMPLES; i++) {
+      for (int j = 0; j < SAMPLES; j++) {
+        for (double height : heights) {
+          double x = schema.getWidth() * i / SAMPLES;
+          double y = schema.getHeight() * j / SAMPLES;
+          positions[p] = (float) x;
+          positions[p + 1] = (float) y;
+          positions[p + 2] = (float) height;
+          coordinates.get3DCoordinates(x, y, height, expected, p);
+          p += 3;
+        }
+      }
+    }
+    return maxDistance(shader.map(gl, schema, positions, null), expected);
+  }
+
+  /**
+   * Maps the top of spheres for circles across the level, like the snake's
+   * segments and the food
+   * 
+   * @param gl
+   * @param shader
+   * @param schema
+   * @return the biggest distance between where the shader and the CPU put a
+   *         point
+   */
+  private double checkSpheres(GL3 gl, TorusShader shader, LevelSchema schema) {
+    double[] radii = { 0.5, 1, 3 };
+    float[] positions = new float[SAMPLES * SAMPLES * radii.length * 3];
+    float[] instances = new float[positions.length];
+    double[] expected = new double[positions.length];
+    Coordinates coordinates = new Coordinates(schema, 0, 0);
+    int p = 0;
+    for (int i = 0; i < SAMPLES; i++) {
+      for (int j = 0; j < SAMPLES; j++) {
+        for (double radius : radii) {
+          double x = schema.getWidth() * i / SAMPLES;
+          double y = schema.getHeight() * j / SAMPLES;
+          positions[p + 2] = 1;
+          instances[p] = (float) x;
+          instances[p + 1] = (float) y;
+          instances[p + 2] = (float) radius;
+          double threeDRadius = coordinates.threeDRadius(y, radius);
+          coordinates.get3DCoordinates(x, y, threeDRadius, expected, p);
+          expected[p + 2] += threeDRadius;
+          p += 3;
+        }
+      }
+    }
+    return maxDistance(shader.map(gl, schema, positions, instances), expected);
+  }
+
+  /**
+   * @param actual   -- (x, y, z) points
+   * @param expected -- (x, y, z) points
+   * @return the biggest distance between matching points
+   */
+  private static double maxDistance(float[] actual, double[] expected) {
+    double max = 0;
+    for (int p = 0; p < expected.length; p += 3) {
+      double dx = actual[p] - expected[p];
+      double dy = actual[p + 1] - expected[p + 1];
+      double dz = actual[p + 2] - expected[p + 2];
+      max = Math.max(max, Math.sqrt(dx * dx + dy * dy + dz * dz));
+    }
+    return max;
+  }
+
+  @Override
+  public void init(GLAutoDrawable drawable) {
+  }
+
+  @Override
+  public void dispose(GLAutoDrawable drawable) {
+  }
+
+  @Override
+  public void reshape(GLAutoDrawable drawable, int x, int y, int width, int height) {
+  }
+}
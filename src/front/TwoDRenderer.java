@@ -0,0 +1,224 @@
+package front;
+
+import java.nio.FloatBuffer;
+
+import com.jogamp.common.nio.Buffers;
+import com.jogamp.opengl.GL;
+import com.jogamp.opengl.GL2;
+import com.jogamp.opengl.fixedfunc.GLPointerFunc;
+
+import back.LevelSchema;
+import back.ObstacleIndex;
+import back.Snapshot;
+
+/**
+ * This class draws a level from above with vertex buffers instead of one
+ * glVertex call per point. The grid and the obstacles never change, so they
+ * are put into buffers on the graphics card once, when the renderer is made.
+ * The snake and the food are put together into one buffer of triangles each
+ * frame, from a circle that is only worked out once, and drawn with two calls.
+ * 
+ * A renderer belongs to one GL context and one level schema. release() should
+ * be called once it isn't needed anymore.
+ */
+public class TwoDRenderer {
+
+  // The number of triangles that a circle is made of
+  private final static int CIRCLE_TRIANGLES = 72;
+
+  // Floats per 2D vertex, and per circle
+  private final static int FLOATS_PER_VERTEX = 2;
+  private final static int FLOATS_PER_CIRCLE = CIRCLE_TRIANGLES * 3 * FLOATS_PER_VERTEX;
+
+  // The points around a circle of radius 1, with the first point repeated at
+  // the end
+  private final static float[] UNIT_CIRCLE_X = new float[CIRCLE_TRIANGLES + 1];
+  private final static float[] UNIT_CIRCLE_Y = new float[CIRCLE_TRIANGLES + 1];
+  static {
+    for (int i = 0; i <= CIRCLE_TRIANGLES; i++) {
+      double angle = (i / (double) CIRCLE_TRIANGLES) * 2 * Math.PI;
+      UNIT_CIRCLE_X[i] = (float) Math.sin(angle);
+      UNIT_CIRCLE_Y[i] = (float) Math.cos(angle);
+    }
+  }
+
+  // The schema that the grid and obstacles were made from
+  private LevelSchema schema;
+
+  // Buffer names for the grid lines, the obstacle triangles and the circles
+  private int[] buffers = new int[3];
+  private final static int GRID = 0;
+  private final static int OBSTACLES = 1;
+  private final static int CIRCLES = 2;
+
+  // The number of vertices in the grid and obstacle buffers
+  private int gridVertices;
+  private int obstacleVertices;
+
+  // Where the circles are put together before they are uploaded, and how many
+  // circles there is room for on the graphics card
+  private FloatBuffer circles;
+  private int circleCapacity = 0;
+
+  /**
+   * Constructor, uploads the grid and the obstacles
+   * 
+   * @param gl
+   * @param schema
+   */
+  public TwoDRenderer(GL2 gl, LevelSchema schema) {
+    this.schema = schema;
+    gl.glGenBuffers(buffers.length, buffers, 0);
+
+    // The grid, as pairs of points for GL_LINES
+    int columns = 0;
+    for (int i = 0; i < schema.getWidth(); i += GameDisplay.LINE_SPACING)
+      columns++;
+    int rows = 0;
+    for (int i = 0; i < schema.getHeight(); i += GameDisplay.LINE_SPACING)
+      rows++;
+    gridVertices = (columns + rows) * 2;
+    FloatBuffer grid = Buffers.newDirectFloatBuffer(Math.max(1, gridVertices * FLOATS_PER_VERTEX));
+    for (int i = 0; i < schema.getWidth(); i += GameDisplay.LINE_SPACING)
+      grid.put(i).put(0).put(i).put((float) schema.getHeight());
+    for (int i = 0; i < schema.getHeight(); i += GameDisplay.LINE_SPACING)
+      grid.put(0).put(i).put((float) schema.getWidth()).put(i);
+    upload(gl, GRID, grid, GL.GL_STATIC_DRAW);
+
+    // The obstacles, which are already split at the edges of the level, as two
+    // triangles each
+    ObstacleIndex obstacles = schema.getObstacleIndex();
+    obstacleVertices = obstacles.getPieceCount() * 6;
+    FloatBuffer quads = Buffers.newDirectFloatBuffer(Math.max(1, obstacleVertices * FLOATS_PER_VERTEX));
+    for (int i = 0; i < obstacles.getPieceCount(); i++) {
+      float left = (float) obstacles.getLeftSideX(i);
+      float right = (float) obstacles.getRightSideX(i);
+      float top = (float) obstacles.getTopSideY(i);
+      float bottom = (float) obstacles.getBottomSideY(i);
+      quads.put(left).put(top).put(left).put(bottom).put(right).put(bottom);
+      quads.put(left).put(top).put(right).put(bottom).put(right).put(top);
+    }
+    upload(gl, OBSTACLES, quads, GL.GL_STATIC_DRAW);
+  }
+
+  /**
+   * Getter for schema
+   * 
+   * @return the schema that this renderer was made for
+   */
+  public LevelSchema getSchema() {
+    return schema;
+  }
+
+  /**
+   * Draws the level. The projection should already map the level's
+   * coordinates onto the viewport.
+   * 
+   * @param gl
+   * @param snapshot
+   * @param fraction -- how far it is from the tick before the snapshot to the
+   *                 snapshot (see Snapshot.getFraction())
+   */
+  public void render(GL2 gl, Snapshot snapshot, double fraction) {
+    int snakeLength = snapshot.getSnakeLength();
+    int circleCount = snakeLength + (snapshot.hasFood() ? 1 : 0);
+
+    // Put all of the circles together and upload them in one go
+    if (circles == null || circles.capacity() < circleCount * FLOATS_PER_CIRCLE)
+      circles = Buffers.newDirectFloatBuffer(Math.max(16, circleCount * 2) * FLOATS_PER_CIRCLE);
+    circles.clear();
+    for (int i = 0; i < snakeLength; i++)
+      putCircle(snapshot.getSnakeX(i, fraction), snapshot.getSnakeY(i, fraction), snapshot.getSegmentRadius());
+    if (snapshot.hasFood())
+      putCircle(snapshot.getFoodX(), snapshot.getFoodY(), snapshot.getFoodRadius());
+    circles.flip();
+    gl.glBindBuffer(GL.GL_ARRAY_BUFFER, buffers[CIRCLES]);
+    if (circleCount > circleCapacity) {
+      circleCapacity = circles.capacity() / FLOATS_PER_CIRCLE;
+      gl.glBufferData(GL.GL_ARRAY_BUFFER, (long) circleCapacity * FLOATS_PER_CIRCLE * Buffers.SIZEOF_FLOAT, null,
+          GL.GL_DYNAMIC_DRAW);
+    }
+    gl.glBufferSubData(GL.GL_ARRAY_BUFFER, 0, (long) circles.remaining() * Buffers.SIZEOF_FLOAT, circles);
+
+    gl.glEnableClientState(GLPointerFunc.GL_VERTEX_ARRAY);
+
+    // Draw a grid of green lines to represent the plane
+    gl.glColor3d(0, 1, 0);
+    draw(gl, GRID, GL.GL_LINES, 0, gridVertices);
+
+    // Draw each snake segment, then the food
+    gl.glColor3d(1, 0, 0);
+    draw(gl, CIRCLES, GL.GL_TRIANGLES, 0, snakeLength * CIRCLE_TRIANGLES * 3);
+    if (snapshot.hasFood()) {
+      gl.glColor3d(1, 0, 1);
+      draw(gl, CIRCLES, GL.GL_TRIANGLES, snakeLength * CIRCLE_TRIANGLES * 3, CIRCLE_TRIANGLES * 3);
+    }
+
+    // Draw the obstacles
+    gl.glColor3d(.3, .3, 1);
+    draw(gl, OBSTACLES, GL.GL_TRIANGLES, 0, obstacleVertices);
+
+    gl.glDisableClientState(GLPointerFunc.GL_VERTEX_ARRAY);
+    gl.glBindBuffer(GL.GL_ARRAY_BUFFER, 0);
+  }
+
+  /**
+   * Frees the buffers on the graphics card. The renderer can't be used after
+   * this.
+   * 
+   * @param gl
+   */
+  public void release(GL2 gl) {
+    gl.glDeleteBuffers(buffers.length, buffers, 0);
+  }
+
+  /**
+   * Adds the triangles for a circle to the circle buffer
+   * 
+   * @param x      -- x coordinate of the center
+   * @param y      -- y coordinate of the center
+   * @param radius
+   */
+  private void putCircle(double x, double y, double radius) {
+    float centerX = (float) x;
+    float centerY = (float) y;
+    float r = (float) radius;
+    for (int i = 0; i < CIRCLE_TRIANGLES; i++) {
+      circles.put(centerX).put(centerY);
+      circles.put(centerX + UNIT_CIRCLE_X[i] * r).put(centerY + UNIT_CIRCLE_Y[i] * r);
+      circles.put(centerX + UNIT_CIRCLE_X[i + 1] * r).put(centerY + UNIT_CIRCLE_Y[i + 1] * r);
+    }
+  }
+
+  /**
+   * Uploads the contents of one of the buffers
+   * 
+   * @param gl
+   * @param buffer -- GRID, OBSTACLES or CIRCLES
+   * @param data
+   * @param usage
+   */
+  private void upload(GL2 gl, int buffer, FloatBuffer data, int usage) {
+    data.flip();
+    gl.glBindBuffer(GL.GL_ARRAY_BUFFER, buffers[buffer]);
+    gl.glBufferData(GL.GL_ARRAY_BUFFER, (long) data.remaining() * Buffers.SIZEOF_FLOAT, data, usage);
+    gl.glBindBuffer(GL.GL_ARRAY_BUFFER, 0);
+  }
+
+  /**
+   * Draws some of the vertices in one of the buffers
+   * 
+   * @param gl
+   * @param buffer -- GRID, OBSTACLES or CIRCLES
+   * @param mode
+   * @param first
+   * @param count
+   */
+  private void draw(GL2 gl, int buffer, int mode, int first, int count) {
+    if (count == 0)
+      return;
+    gl.glBindBuffer(GL.GL_ARRAY_BUFFER, buffers[buffer]);
+    gl.glVertexPointer(FLOATS_PER_VERTEX, GL.GL_FLOAT, 0, 0);
+    gl.glDrawArrays(mode, first, count);
+  }
+}
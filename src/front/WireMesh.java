@@ -0,0 +1,315 @@
+package front;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import com.jogamp.common.nio.Buffers;
+import com.jogamp.common.util.VersionNumber;
+import com.jogamp.opengl.GL;
+import com.jogamp.opengl.GL2;
+import com.jogamp.opengl.GL2ES3;
+import com.jogamp.opengl.fixedfunc.GLPointerFunc;
+
+import back.Coordinates;
+import back.LevelSchema;
+
+/**
+ * This class represents a wireframe that lives on the graphics card: a vertex
+ * buffer of 3D points and an index buffer of pairs of points to draw lines
+ * between. Once it is made it is drawn with a single call, however many lines
+ * it has.
+ * 
+ * It belongs to the GL context it was made in, and release() should be called
+ * once it isn't needed anymore.
+ */
+class WireMesh {
+
+  // Buffer names for the vertices and the line indices
+  private int[] buffers = new int[2];
+
+  // The number of indices (twice the number of lines)
+  private int indexCount;
+
+  /**
+   * Constructor, uploads the mesh
+   * 
+   * @param gl
+   * @param vertices -- (x, y, z) triples
+   * @param lines    -- pairs of vertex numbers
+   */
+  WireMesh(GL2 gl, float[] vertices, int[] lines) {
+    indexCount = lines.length;
+    gl.glGenBuffers(buffers.length, buffers, 0);
+
+    FloatBuffer vertexData = Buffers.newDirectFloatBuffer(Math.max(1, vertices.length));
+    vertexData.put(vertices).flip();
+    gl.glBindBuffer(GL.GL_ARRAY_BUFFER, buffers[0]);
+    gl.glBufferData(GL.GL_ARRAY_BUFFER, (long) vertices.length * Buffers.SIZEOF_FLOAT, vertexData,
+        GL.GL_STATIC_DRAW);
+    gl.glBindBuffer(GL.GL_ARRAY_BUFFER, 0);
+
+    IntBuffer indexData = Buffers.newDirectIntBuffer(Math.max(1, lines.length));
+    indexData.put(lines).flip();
+    gl.glBindBuffer(GL.GL_ELEMENT_ARRAY_BUFFER, buffers[1]);
+    gl.glBufferData(GL.GL_ELEMENT_ARRAY_BUFFER, (long) lines.length * Buffers.SIZEOF_INT, indexData,
+        GL.GL_STATIC_DRAW);
+    gl.glBindBuffer(GL.GL_ELEMENT_ARRAY_BUFFER, 0);
+  }
+
+  /**
+   * Draws the mesh with the current color and transformation
+   * 
+   * @param gl
+   */
+  void draw(GL2 gl) {
+    if (indexCount == 0)
+      return;
+    gl.glEnableClientState(GLPointerFunc.GL_VERTEX_ARRAY);
+    gl.glBindBuffer(GL.GL_ARRAY_BUFFER, buffers[0]);
+    gl.glVertexPointer(3, GL.GL_FLOAT, 0, 0);
+    gl.glBindBuffer(GL.GL_ELEMENT_ARRAY_BUFFER, buffers[1]);
+    gl.glDrawElements(GL.GL_LINES, indexCount, GL.GL_UNSIGNED_INT, 0);
+    gl.glBindBuffer(GL.GL_ELEMENT_ARRAY_BUFFER, 0);
+    gl.glBindBuffer(GL.GL_ARRAY_BUFFER, 0);
+    gl.glDisableClientState(GLPointerFunc.GL_VERTEX_ARRAY);
+  }
+
+  /**
+   * Whether a context can use drawInstanced() with per-instance attributes.
+   * That takes glVertexAttribDivisor(), which is only core from GL 3.3. Older
+   * contexts may still say they're a GL2ES3 (every GL2 context does) and
+   * compile the shaders, but fail on the first draw.
+   * 
+   * @param gl
+   * @return whether the context is GL 3.3 or later
+   */
+  static boolean canDrawInstanced(GL gl) {
+    VersionNumber version = gl.getContext().getGLVersionNumber();
+    return gl.isGL2ES3() && (version.getMajor() > 3 || (version.getMajor() == 3 && version.getMinor() >= 3));
+  }
+
+  /**
+   * Draws many copies of the mesh in one call, for a shader that places each
+   * copy itself. The instance attributes should already be set up, and the
+   * context has to be able to (see canDrawInstanced()).
+   * 
+   * @param gl
+   * @param positionAttribute -- the attribute location for the vertices
+   * @param instances         -- the number of copies
+   */
+  void drawInstanced(GL2ES3 gl, int positionAttribute, int instances) {
+    if (indexCount == 0)
+      return;
+    gl.glBindBuffer(GL.GL_ARRAY_BUFFER, buffers[0]);
+    gl.glVertexAttribPointer(positionAttribute, 3, GL.GL_FLOAT, false, 0, 0);
+    gl.glEnableVertexAttribArray(positionAttribute);
+    gl.glBindBuffer(GL.GL_ELEMENT_ARRAY_BUFFER, buffers[1]);
+    gl.glDrawElementsInstanced(GL.GL_LINES, indexCount, GL.GL_UNSIGNED_INT, 0, instances);
+    gl.glBindBuffer(GL.GL_ELEMENT_ARRAY_BUFFER, 0);
+    gl.glDisableVertexAttribArray(positionAttribute);
+    gl.glBindBuffer(GL.GL_ARRAY_BUFFER, 0);
+  }
+
+  /**
+   * Frees the buffers on the graphics card. The mesh can't be drawn after this.
+   * 
+   * @param gl
+   */
+  void release(GL2 gl) {
+    gl.glDeleteBuffers(buffers.length, buffers, 0);
+    indexCount = 0;
+  }
+
+  /**
+   * Makes the wireframe of a sphere of radius 1 around the origin, with the
+   * same lines as glutWireSphere(): circles of latitude between the stacks, and
+   * lines of longitude between the slices.
+   * 
+   * @param gl
+   * @param slices -- the number of lines of longitude
+   * @param stacks -- the number of bands from pole to pole
+   * @return the mesh
+   */
+  static WireMesh sphere(GL2 gl, int slices, int stacks) {
+
+    // The vertex for slice i on the edge between stacks j - 1 and j is number
+    // j * slices + i, from j = 0 at one pole to j = stacks at the other
+    float[] vertices = new float[(stacks + 1) * slices * 3];
+    for (int j = 0; j <= stacks; j++) {
+      double polar = Math.PI * j / stacks;
+      for (int i = 0; i < slices; i++) {
+        double azimuth = 2 * Math.PI * i / slices;
+        int v = (j * slices + i) * 3;
+        vertices[v] = (float) (Math.sin(polar) * Math.cos(azimuth));
+        vertices[v + 1] = (float) (Math.sin(polar) * Math.sin(azimuth));
+        vertices[v + 2] = (float) Math.cos(polar);
+      }
+    }
+
+    int[] lines = new int[((stacks - 1) * slices + stacks * slices) * 2];
+    int line = 0;
+
+    // Circles of latitude (not at the poles, where they would be points)
+    for (int j = 1; j < stacks; j++) {
+      for (int i = 0; i < slices; i++) {
+        lines[line++] = j * slices + i;
+        lines[line++] = j * slices + (i + 1) % slices;
+      }
+    }
+
+    // Lines of longitude
+    for (int i = 0; i < slices; i++) {
+      for (int j = 0; j < stacks; j++) {
+        lines[line++] = j * slices + i;
+        lines[line++] = (j + 1) * slices + i;
+      }
+    }
+    return new WireMesh(gl, vertices, lines);
+  }
+
+  /**
+   * Makes the wireframe of the torus that a level is drawn on: a grid of rings
+   * around the tube and lines along it, with a ring every LINE_SPACING across
+   * the level and a line every LINE_SPACING down it.
+   * 
+   * On the torus, it has the same vertices and lines as
+   * glutWireTorus(innerRadius, outerRadius, sides, rings). Flat, the vertices
+   * are the (x, y, 0) points on the level where the rings and lines cross, for
+   * TorusShader to map.
+   * 
+   * @param gl
+   * @param schema
+   * @param onTorus -- whether to make it on the torus or flat
+   * @return the mesh
+   */
+  static WireMesh torus(GL2 gl, LevelSchema schema, boolean onTorus) {
+    int sides = Math.max(1, (int) (schema.getHeight() / GameDisplay.LINE_SPACING));
+    int rings = Math.max(1, (int) (schema.getWidth() / GameDisplay.LINE_SPACING));
+    double tubeRadius = schema.innerRadius();
+    double centerRadius = schema.outerRadius();
+
+    // The vertex on ring k at side m is number k * sides + m
+    float[] vertices = new float[rings * sides * 3];
+    for (int k = 0; k < rings; k++) {
+      double theta = 2 * Math.PI * k / rings;
+      for (int m = 0; m < sides; m++) {
+        double phi = 2 * Math.PI * m / sides;
+        double distance = centerRadius + tubeRadius * Math.cos(phi);
+        int v = (k * sides + m) * 3;
+        if (onTorus) {
+          vertices[v] = (float) (Math.cos(theta) * distance);
+          vertices[v + 1] = (float) (-Math.sin(theta) * distance);
+          vertices[v + 2] = (float) (tubeRadius * Math.sin(phi));
+        } else {
+          vertices[v] = (float) (schema.getWidth() * k / rings);
+          vertices[v + 1] = (float) (schema.getHeight() * m / sides);
+          vertices[v + 2] = 0;
+        }
+      }
+    }
+
+    int[] lines = new int[rings * sides * 2 * 2];
+    int line = 0;
+    for (int k = 0; k < rings; k++) {
+      for (int m = 0; m < sides; m++) {
+        // Around the tube
+        lines[line++] = k * sides + m;
+        lines[line++] = k * sides + (m + 1) % sides;
+
+        // Along the tube
+        lines[line++] = k * sides + m;
+        lines[line++] = ((k + 1) % rings) * sides + m;
+      }
+    }
+    return new WireMesh(gl, vertices, lines);
+  }
+
+  /**
+   * Makes the wireframes of all of a level's obstacles. Each obstacle is a box
+   * split into chunks about IDEAL_CHUNK_SIZE across, with lines along both
+   * directions on its bottom and top, and lines joining the two. The vertices
+   * are either bent around the torus, or flat (x, y, height) points for
+   * TorusShader to map.
+   * 
+   * @param gl
+   * @param schema
+   * @param onTorus -- whether to make it on the torus or flat
+   * @return the mesh
+   */
+  static WireMesh obstacles(GL2 gl, LevelSchema schema, boolean onTorus) {
+
+    // This is the ideal spacing between adjacent lines on an obstacle
+    final double IDEAL_CHUNK_SIZE = 3;
+
+    // Count everything up first so that the arrays can be made the right size
+    int totalVertices = 0;
+    int totalLines = 0;
+    for (LevelSchema.Obstacle o : schema.getObstacles()) {
+      int numXChunks = Math.max(1, (int) (o.getWidth() / IDEAL_CHUNK_SIZE));
+      int numYChunks = Math.max(1, (int) (o.getHeight() / IDEAL_CHUNK_SIZE));
+      int layerVertices = (numXChunks + 1) * (numYChunks + 1);
+      totalVertices += layerVertices * 2;
+      totalLines += ((numXChunks + 1) * numYChunks + (numYChunks + 1) * numXChunks) * 2 + layerVertices;
+    }
+
+    float[] vertices = new float[totalVertices * 3];
+    int[] lines = new int[totalLines * 2];
+    double[] position = new double[3];
+    int vertex = 0;
+    int line = 0;
+    for (LevelSchema.Obstacle o : schema.getObstacles()) {
+      int numXChunks = Math.max(1, (int) (o.getWidth() / IDEAL_CHUNK_SIZE));
+      double xChunkSize = o.getWidth() / numXChunks;
+      int numYChunks = Math.max(1, (int) (o.getHeight() / IDEAL_CHUNK_SIZE));
+      double yChunkSize = o.getHeight() / numYChunks;
+      double height = o.threeDHeight();
+      Coordinates coordinates = o.getCoordinates();
+
+      // The vertex at chunk (x, y) is number bottom + x * (numYChunks + 1) + y
+      // on the bottom layer, and layerVertices more than that on the top layer
+      int layerVertices = (numXChunks + 1) * (numYChunks + 1);
+      int bottom = vertex;
+      int top = vertex + layerVertices;
+      for (double layerHeight : new double[] { 0, height }) {
+        for (int x = 0; x <= numXChunks; x++) {
+          for (int y = 0; y <= numYChunks; y++) {
+            position[0] = o.getLeftSideX() + x * xChunkSize;
+            position[1] = o.getTopSideY() + y * yChunkSize;
+            position[2] = layerHeight;
+            if (onTorus)
+              coordinates.get3DCoordinates(position[0], position[1], position[2], position, 0);
+            vertices[vertex * 3] = (float) position[0];
+            vertices[vertex * 3 + 1] = (float) position[1];
+            vertices[vertex * 3 + 2] = (float) position[2];
+            vertex++;
+          }
+        }
+      }
+
+      for (int layer : new int[] { bottom, top }) {
+        // The lines that go along the y direction
+        for (int x = 0; x <= numXChunks; x++) {
+          for (int y = 0; y < numYChunks; y++) {
+            lines[line++] = layer + x * (numYChunks + 1) + y;
+            lines[line++] = layer + x * (numYChunks + 1) + y + 1;
+          }
+        }
+
+        // The lines that go along the x direction
+        for (int y = 0; y <= numYChunks; y++) {
+          for (int x = 0; x < numXChunks; x++) {
+            lines[line++] = layer + x * (numYChunks + 1) + y;
+            lines[line++] = layer + (x + 1) * (numYChunks + 1) + y;
+          }
+        }
+      }
+
+      // The lines that go from the bottom layer to the top layer
+      for (int i = 0; i < layerVertices; i++) {
+        lines[line++] = bottom + i;
+        lines[line++] = top + i;
+      }
+    }
+    return new WireMesh(gl, vertices, lines);
+  }
+}